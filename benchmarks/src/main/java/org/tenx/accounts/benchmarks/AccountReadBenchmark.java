@@ -0,0 +1,75 @@
+package org.tenx.accounts.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tenx.accounts.AccountStore;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single account lookups by random ID and full listings, built as one string and streamed, over tables of 10k
+ * and 1M accounts.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AccountReadBenchmark {
+
+    @Param({"sqlite", "memory"})
+    public String engine;
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    private Path path;
+    private AccountStore store;
+
+    @Setup(Level.Trial)
+    public void openStore() throws Exception {
+        path = Fixtures.newStorePath();
+        store = Fixtures.openStore(engine, path);
+        Fixtures.seedAccounts(store, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStore() throws Exception {
+        store.close();
+        Fixtures.deleteStore(path);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String getAccountDetailsById() throws Exception {
+        return store.getAccountDetails(1 + ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String getAllAccountDetails() throws Exception {
+        return store.getAccountDetails();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void streamAllAccountDetails() throws Exception {
+        store.writeAccountDetails(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,56 @@
+package org.tenx.accounts.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tenx.accounts.AccountStore;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts created per second, every one with a new ID.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CreateAccountBenchmark {
+
+    @Param({"sqlite", "memory"})
+    public String engine;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private Path path;
+    private AccountStore store;
+
+    @Setup(Level.Trial)
+    public void openStore() throws Exception {
+        path = Fixtures.newStorePath();
+        store = Fixtures.openStore(engine, path);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStore() throws Exception {
+        store.close();
+        Fixtures.deleteStore(path);
+    }
+
+    @Benchmark
+    public String createAccountEntry() throws Exception {
+        return store.createAccountEntry(Fixtures.account(nextId.incrementAndGet()));
+    }
+}
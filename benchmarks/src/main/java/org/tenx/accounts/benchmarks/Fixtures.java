@@ -0,0 +1,112 @@
+package org.tenx.accounts.benchmarks;
+
+import org.tenx.accounts.Account;
+import org.tenx.accounts.AccountStore;
+import org.tenx.accounts.BankProperties;
+import org.tenx.accounts.Money;
+import org.tenx.accounts.Transfer;
+import org.tenx.accounts.TransferMessages;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+
+/**
+ * Builds throwaway stores for the benchmarks. Every store lives in its own temporary files so a run never
+ * touches 10xBank or 10xBankTestDB. Accounts get the IDs 1 to count.
+ */
+final class Fixtures {
+    static final String CURRENCY = "GBP";
+    /** Held by the even numbered accounts when currencies are mixed, so about half of all transfers convert. */
+    static final String OTHER_CURRENCY = "USD";
+    // large enough that no benchmark iteration can drain an account
+    static final long OPENING_BALANCE_MINOR_UNITS = 1_000_000_000_00L;
+
+    private Fixtures() {
+    }
+
+    static Path newStorePath() throws IOException {
+        return Files.createTempFile("10xBankBench", ".db");
+    }
+
+    /**
+     * Settings for a store of the given engine at path, with the account cache off so the engine itself is
+     * measured.
+     */
+    static BankProperties properties(String engine, Path path) {
+        BankProperties properties = new BankProperties();
+        properties.setEngine(engine);
+        properties.getDb().setUrl("jdbc:sqlite:" + path);
+        properties.getMemory().setJournalPath(path + ".journal");
+        properties.getCache().setEnabled(false);
+        properties.getFx().setRatesPath(path + ".fx");
+        return properties;
+    }
+
+    /**
+     * Writes the exchange rate file the store at path reads, with a rate between {@link #CURRENCY} and
+     * {@link #OTHER_CURRENCY}. Call before opening the store.
+     */
+    static void writeRates(Path path) throws IOException {
+        Files.writeString(Paths.get(path + ".fx"), CURRENCY + "," + OTHER_CURRENCY + ",1.2710\n");
+    }
+
+    static AccountStore openStore(String engine, Path path) throws IOException {
+        return AccountStore.create(properties(engine, path));
+    }
+
+    /**
+     * Adds count accounts through the store's bulk import, one transaction on SQLite.
+     */
+    static void seedAccounts(AccountStore store, int count) throws IOException, SQLException {
+        seedAccounts(store, count, false);
+    }
+
+    /**
+     * @param mixedCurrencies if the even numbered accounts should hold {@link #OTHER_CURRENCY}
+     */
+    static void seedAccounts(AccountStore store, int count, boolean mixedCurrencies) throws IOException,
+            SQLException {
+        long[] nextId = {1};
+        String result = store.importAccounts(() -> {
+            long id = nextId[0]++;
+            return id > count ? null : account(id, currencyOf(id, mixedCurrencies));
+        });
+        if (!result.equals(TransferMessages.imported(count))) {
+            throw new IllegalStateException("Seeding " + count + " accounts failed: " + result);
+        }
+    }
+
+    static Account account(long id) {
+        return account(id, CURRENCY);
+    }
+
+    static Account account(long id, String currency) {
+        Account account = new Account();
+        account.setId(id);
+        account.setBalance(Money.ofMinorUnits(OPENING_BALANCE_MINOR_UNITS, Money.exponentOf(currency)));
+        account.setCurrency(currency);
+        return account;
+    }
+
+    private static String currencyOf(long id, boolean mixedCurrencies) {
+        return mixedCurrencies && id % 2 == 0 ? OTHER_CURRENCY : CURRENCY;
+    }
+
+    static Transfer transfer(long sourceAccountId, long destinationAccountId) {
+        Transfer transfer = new Transfer();
+        transfer.setSourceAccountId(sourceAccountId);
+        transfer.setDestinationAccountId(destinationAccountId);
+        transfer.setAmount(Money.ofMinorUnits(1, Money.exponentOf(CURRENCY)));
+        transfer.setCurrency(CURRENCY);
+        return transfer;
+    }
+
+    static void deleteStore(Path path) throws IOException {
+        for (String suffix : new String[]{"", "-wal", "-shm", "-journal", ".journal", ".fx"}) {
+            Files.deleteIfExists(Paths.get(path + suffix));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.tenx.accounts.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.tenx.accounts.AccountStore;
+import org.tenx.accounts.Controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end requests per second against the app running in embedded Tomcat on a random port, with the
+ * settings from application.properties apart from the DB file. Each benchmark thread is one client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class HttpBenchmark {
+
+    @Param({"10000"})
+    public int accounts;
+
+    private Path path;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void startApp() throws Exception {
+        path = Fixtures.newStorePath();
+        try (AccountStore store = Fixtures.openStore("sqlite", path)) {
+            Fixtures.seedAccounts(store, accounts);
+        }
+
+        // as arguments, default properties would lose to application.properties
+        context = new SpringApplicationBuilder(Controller.class)
+                .run("--server.port=0", "--tenx.db.url=jdbc:sqlite:" + path);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        baseUrl = "http://localhost:" + port;
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApp() throws Exception {
+        context.close();
+        Fixtures.deleteStore(path);
+    }
+
+    @Benchmark
+    public String getAccountStatus() throws Exception {
+        long id = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/getaccountstatus/" + id)).GET().build());
+    }
+
+    @Benchmark
+    public String transfer() throws Exception {
+        long source = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        long destination = source % accounts + 1;
+        String body = "{\"sourceAccountId\":" + source + ",\"destinationAccountId\":" + destination +
+                ",\"amount\":0.01,\"currency\":\"" + Fixtures.CURRENCY + "\"}";
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/transfer"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,86 @@
+package org.tenx.accounts.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tenx.accounts.AccountFormat;
+import org.tenx.accounts.AccountStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to import a whole book of 1M accounts into an empty store from each bulk format, and to export it again.
+ * Each import gets a fresh store; the input is built once per trial so only the import is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({"sqlite", "memory"})
+    public String engine;
+
+    @Param({"csv", "ndjson", "binary"})
+    public String format;
+
+    @Param({"1000000"})
+    public int accounts;
+
+    private AccountFormat accountFormat;
+    private byte[] book;
+    private Path path;
+    private AccountStore store;
+
+    @Setup(Level.Trial)
+    public void buildBook() throws Exception {
+        accountFormat = AccountFormat.of(format);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(accounts * 48);
+        AccountFormat.AccountWriter writer = accountFormat.openWriter(out);
+        long createdAt = System.currentTimeMillis();
+        for (long id = 1; id <= accounts; id++) {
+            writer.write(id, Fixtures.OPENING_BALANCE_MINOR_UNITS, 2, Fixtures.CURRENCY, createdAt);
+        }
+        writer.finish();
+        book = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void openStore() throws Exception {
+        path = Fixtures.newStorePath();
+        store = Fixtures.openStore(engine, path);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() throws Exception {
+        store.close();
+        Fixtures.deleteStore(path);
+    }
+
+    @Benchmark
+    public String importAccounts() throws Exception {
+        return store.importAccounts(accountFormat.openReader(new ByteArrayInputStream(book)));
+    }
+
+    @Benchmark
+    public void importThenExportAccounts() throws Exception {
+        store.importAccounts(accountFormat.openReader(new ByteArrayInputStream(book)));
+        store.exportAccounts(accountFormat.openWriter(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,108 @@
+package org.tenx.accounts.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tenx.accounts.AccountStore;
+import org.tenx.accounts.BankProperties;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers per second at 1, 8 and 64 threads. With the uniform distribution every account is equally likely
+ * to be picked; with zipfian a few hot accounts are in most transfers, which is where lock and write
+ * contention shows. With mixed currencies half the accounts hold USD, so about three transfers in four convert
+ * the GBP amount through the exchange rate table; its throughput should match single.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"sqlite", "memory"})
+    public String engine;
+
+    @Param({"uniform", "zipfian"})
+    public String distribution;
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({"single", "mixed"})
+    public String currencies;
+
+    /** In-memory engine only: 0 locks stripes, above 0 runs transfers on that many single-writer shards. */
+    @Param({"0"})
+    public int transferShards;
+
+    private Path path;
+    private AccountStore store;
+    private ZipfianGenerator zipfian;
+
+    @Setup(Level.Trial)
+    public void openStore() throws Exception {
+        path = Fixtures.newStorePath();
+        BankProperties properties = Fixtures.properties(engine, path);
+        properties.getMemory().setTransferShards(transferShards);
+        Fixtures.writeRates(path);
+        store = AccountStore.create(properties);
+        Fixtures.seedAccounts(store, accounts, currencies.equals("mixed"));
+        zipfian = new ZipfianGenerator(accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStore() throws Exception {
+        store.close();
+        Fixtures.deleteStore(path);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String handleTransaction_1_thread() throws Exception {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String handleTransaction_8_threads() throws Exception {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String handleTransaction_64_threads() throws Exception {
+        return transfer();
+    }
+
+    private String transfer() throws Exception {
+        long source = nextAccountId();
+        long destination = nextAccountId();
+        if (destination == source) {
+            destination = source % accounts + 1;
+        }
+        return store.handleTransaction(Fixtures.transfer(source, destination));
+    }
+
+    private long nextAccountId() {
+        if (distribution.equals("zipfian")) {
+            return 1 + zipfian.next();
+        }
+        return 1 + ThreadLocalRandom.current().nextInt(accounts);
+    }
+}
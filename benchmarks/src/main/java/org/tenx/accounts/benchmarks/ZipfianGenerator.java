@@ -0,0 +1,50 @@
+package org.tenx.accounts.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws values in [0, items) where a few low values are picked far more often than the rest, the way a handful
+ * of busy accounts see most of the traffic. Uses the method of Gray et al., "Quickly Generating Billion-Record
+ * Synthetic Databases", also used by YCSB. Immutable once built, so threads can share one.
+ */
+final class ZipfianGenerator {
+    static final double DEFAULT_SKEW = 0.99;
+
+    private final long items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    ZipfianGenerator(long items) {
+        this(items, DEFAULT_SKEW);
+    }
+
+    ZipfianGenerator(long items, double theta) {
+        this.items = items;
+        this.theta = theta;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    long next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -1,20 +1,20 @@
 package org.tenx.accounts;
 
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 public class Account {
     private long id;
-    private double balance;
+    private Money balance = Money.ZERO;
     private String currency;
-    private String createdAt = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    // epoch milliseconds; 0 until the account is created, imported or read back
+    private long createdAt;
 
     public long getId() {
         return id;
     }
 
-    public double getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
@@ -22,7 +22,8 @@ public class Account {
         return currency;
     }
 
-    public String getCreatedAt() {
+    @JsonSerialize(using = Timestamps.Serializer.class)
+    public long getCreatedAt() {
         return createdAt;
     }
 
@@ -30,7 +31,7 @@ public class Account {
         this.id = id;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
@@ -38,7 +39,8 @@ public class Account {
         this.currency = currency;
     }
 
-    public void setCreatedAt(String createdAt) {
+    @JsonDeserialize(using = Timestamps.Deserializer.class)
+    public void setCreatedAt(long createdAt) {
         this.createdAt = createdAt;
     }
 }
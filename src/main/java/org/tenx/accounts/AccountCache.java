@@ -0,0 +1,152 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bounded cache of serialised account responses keyed by account ID, held as the strings the controller returns
+ * so a hit is written out without being decoded first. Entries expire after a fixed time to live and, once the
+ * cache is full, the oldest insertions are evicted first. The map is kept in insertion order, so lookups never
+ * reorder it and can share a read lock.
+ *
+ * A reader that misses takes a {@link #stamp()} before going to the store and hands it back to
+ * {@link #put(long, String, long)}. Every invalidation moves the stamp on, so a response read before a transfer
+ * committed can never be cached after that transfer invalidated the account.
+ */
+public class AccountCache {
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountCache(CacheSettings settings) {
+        this.maxEntries = settings.getMaxEntries();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(settings.getTtlMillis());
+    }
+
+    /**
+     * @return the cached response, or null if there is none or it has expired
+     */
+    public String get(long id) {
+        Entry entry;
+        lock.readLock().lock();
+        try {
+            entry = entries.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (entry != null && entry.expiresAtNanos - System.nanoTime() > 0) {
+            hits.increment();
+            return entry.response;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches the response unless any account was invalidated since the stamp was taken.
+     */
+    public void put(long id, String response, long stamp) {
+        long now = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            if (invalidations.get() != stamp) {
+                return;
+            }
+            // re-inserting moves the entry to the back of the eviction order
+            entries.remove(id);
+            entries.put(id, new Entry(response, now + ttlNanos));
+            evict(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidate(long id) {
+        lock.writeLock().lock();
+        try {
+            invalidations.incrementAndGet();
+            entries.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            invalidations.incrementAndGet();
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> oldestFirst = entries.values().iterator();
+        while (oldestFirst.hasNext()) {
+            Entry entry = oldestFirst.next();
+            if (entries.size() <= maxEntries && entry.expiresAtNanos - now > 0) {
+                break;
+            }
+            oldestFirst.remove();
+            evictions.increment();
+        }
+    }
+
+    public void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("tenx.cache.hits", this, AccountCache::getHits).register(registry);
+        FunctionCounter.builder("tenx.cache.misses", this, AccountCache::getMisses).register(registry);
+        FunctionCounter.builder("tenx.cache.evictions", this, AccountCache::getEvictions).register(registry);
+        Gauge.builder("tenx.cache.size", this, AccountCache::size).register(registry);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final String response;
+        private final long expiresAtNanos;
+
+        private Entry(String response, long expiresAtNanos) {
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
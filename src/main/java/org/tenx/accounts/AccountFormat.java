@@ -0,0 +1,322 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The formats accounts are bulk imported from and exported to, read and written one account at a time so
+ * neither side ever holds the whole book.
+ *
+ * <ul>
+ *     <li>{@code csv}: a {@code id,balance,currency,createdAt} header, then one account per line. createdAt is
+ *     written as epoch milliseconds so an export imports back unchanged; it may be left out, and is read as epoch
+ *     milliseconds or {@code yyyy-MM-dd HH:mm:ss}.</li>
+ *     <li>{@code ndjson}: one account JSON object per line, as {@code /getaccountstatus} writes them, so createdAt
+ *     is kept to the second.</li>
+ *     <li>{@code binary}: a snapshot for full dumps and restores. The {@link #SNAPSHOT_MAGIC} and a version byte,
+ *     then per account a 1 byte followed by the ID, the balance in minor units, their exponent, the currency and
+ *     createdAt in epoch milliseconds, and finally a 0 byte and the number of accounts written, so a cut short
+ *     snapshot is never taken for a complete one.</li>
+ * </ul>
+ */
+public enum AccountFormat {
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson"),
+    BINARY("application/octet-stream");
+
+    static final int SNAPSHOT_MAGIC = 0x31305841; // "10XA"
+    static final byte SNAPSHOT_VERSION = 1;
+    private static final String CSV_HEADER = "id,balance,currency,createdAt";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String mediaType;
+
+    AccountFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is not one of the formats
+     */
+    public static AccountFormat of(String name) {
+        for (AccountFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format " + name + ". Use either [csv], [ndjson] or [binary]");
+    }
+
+    public AccountReader openReader(InputStream in) throws IOException {
+        switch (this) {
+            case CSV:
+                return new CsvReader(in);
+            case NDJSON:
+                return new NdjsonReader(in);
+            default:
+                return new SnapshotReader(in);
+        }
+    }
+
+    public AccountWriter openWriter(OutputStream out) throws IOException {
+        switch (this) {
+            case CSV:
+                return new CsvWriter(out);
+            case NDJSON:
+                return new NdjsonWriter(out);
+            default:
+                return new SnapshotWriter(out);
+        }
+    }
+
+    /**
+     * Reads accounts one at a time. A record that cannot be read fails with an {@link IllegalArgumentException}, or
+     * for NDJSON a {@link com.fasterxml.jackson.core.JsonProcessingException}, naming where it is.
+     */
+    public interface AccountReader {
+        /**
+         * @return the next account, or null after the last one
+         */
+        Account next() throws IOException;
+    }
+
+    /**
+     * Writes accounts one at a time. Nothing is complete until {@link #finish()}, which does not close the
+     * underlying stream.
+     */
+    public interface AccountWriter {
+        void write(long id, long balanceMinorUnits, int exponent, String currency, long createdAt)
+                throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvReader implements AccountReader {
+        private final BufferedReader lines;
+        private int lineNumber;
+
+        private CsvReader(InputStream in) {
+            lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        @Override
+        public Account next() throws IOException {
+            String line;
+            do {
+                line = lines.readLine();
+                if (line == null) {
+                    return null;
+                }
+                lineNumber++;
+                line = line.trim();
+            } while (line.isEmpty() || (lineNumber == 1 && line.regionMatches(true, 0, "id,", 0, 3)));
+
+            String[] fields = line.split(",", -1);
+            if (fields.length != 3 && fields.length != 4) {
+                throw invalidLine("is not " + CSV_HEADER);
+            }
+            Account account = new Account();
+            try {
+                account.setId(Long.parseLong(fields[0].trim()));
+                account.setBalance(Money.parse(fields[1].trim()));
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw invalidLine("has an invalid id or balance");
+            }
+            account.setCurrency(fields[2].trim());
+            if (fields.length == 4 && !fields[3].isBlank()) {
+                account.setCreatedAt(parseCreatedAt(fields[3].trim()));
+            }
+            return account;
+        }
+
+        // tells the two forms apart up front, a failed parse per line would cost more than the import itself
+        private long parseCreatedAt(String createdAt) {
+            try {
+                if (createdAt.chars().allMatch(Character::isDigit)) {
+                    return Long.parseLong(createdAt);
+                }
+                return Timestamps.parse(createdAt);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw invalidLine("has an invalid createdAt");
+            }
+        }
+
+        private IllegalArgumentException invalidLine(String problem) {
+            return new IllegalArgumentException("Line " + lineNumber + " " + problem);
+        }
+    }
+
+    private static final class CsvWriter implements AccountWriter {
+        private final Writer out;
+
+        private CsvWriter(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.out.write(CSV_HEADER);
+            this.out.write('\n');
+        }
+
+        @Override
+        public void write(long id, long balanceMinorUnits, int exponent, String currency, long createdAt)
+                throws IOException {
+            out.write(Long.toString(id));
+            out.write(',');
+            out.write(Money.format(balanceMinorUnits, exponent));
+            out.write(',');
+            out.write(currency == null ? "" : currency);
+            out.write(',');
+            out.write(Long.toString(createdAt));
+            out.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class NdjsonReader implements AccountReader {
+        private final JsonParser parser;
+
+        private NdjsonReader(InputStream in) throws IOException {
+            parser = AccountJsonCodec.createParser(in);
+        }
+
+        @Override
+        public Account next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            AccountJsonCodec.startObject(parser, token);
+            return AccountJsonCodec.readAccountFields(parser);
+        }
+    }
+
+    private static final class NdjsonWriter implements AccountWriter {
+        private final JsonGenerator generator;
+
+        private NdjsonWriter(OutputStream out) throws IOException {
+            generator = AccountJsonCodec.createGenerator(out);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void write(long id, long balanceMinorUnits, int exponent, String currency, long createdAt)
+                throws IOException {
+            AccountJsonCodec.writeAccount(generator, id, balanceMinorUnits, exponent, currency, createdAt);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.writeRaw('\n');
+            generator.close();
+        }
+    }
+
+    private static final class SnapshotReader implements AccountReader {
+        private final DataInputStream in;
+        private long accountsRead;
+        private boolean finished;
+
+        private SnapshotReader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            try {
+                if (this.in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IllegalArgumentException("Not an account snapshot");
+                }
+                byte version = this.in.readByte();
+                if (version != SNAPSHOT_VERSION) {
+                    throw new IllegalArgumentException("Unsupported account snapshot version " + version);
+                }
+            } catch (EOFException e) {
+                throw new IllegalArgumentException("Not an account snapshot");
+            }
+        }
+
+        @Override
+        public Account next() throws IOException {
+            if (finished) {
+                return null;
+            }
+            try {
+                byte marker = in.readByte();
+                if (marker == 0) {
+                    if (in.readLong() != accountsRead) {
+                        throw new IllegalArgumentException("The account snapshot is corrupt, its count does not "
+                                + "match the " + accountsRead + " accounts read");
+                    }
+                    finished = true;
+                    return null;
+                }
+                if (marker != 1) {
+                    throw new IllegalArgumentException("The account snapshot is corrupt after " + accountsRead
+                            + " accounts");
+                }
+                Account account = new Account();
+                account.setId(in.readLong());
+                long balance = in.readLong();
+                account.setBalance(Money.ofMinorUnits(balance, in.readUnsignedByte()));
+                String currency = in.readUTF();
+                account.setCurrency(currency.isEmpty() ? null : currency);
+                account.setCreatedAt(in.readLong());
+                accountsRead++;
+                return account;
+            } catch (EOFException e) {
+                throw new IllegalArgumentException("The account snapshot is cut short after " + accountsRead
+                        + " accounts");
+            }
+        }
+    }
+
+    private static final class SnapshotWriter implements AccountWriter {
+        private final DataOutputStream out;
+        private long accountsWritten;
+
+        private SnapshotWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            this.out.writeInt(SNAPSHOT_MAGIC);
+            this.out.writeByte(SNAPSHOT_VERSION);
+        }
+
+        @Override
+        public void write(long id, long balanceMinorUnits, int exponent, String currency, long createdAt)
+                throws IOException {
+            out.writeByte(1);
+            out.writeLong(id);
+            out.writeLong(balanceMinorUnits);
+            out.writeByte(exponent);
+            out.writeUTF(currency == null ? "" : currency);
+            out.writeLong(createdAt);
+            accountsWritten++;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.writeByte(0);
+            out.writeLong(accountsWritten);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal backing {@link InMemoryAccountStore}. Every change is written here before it is applied in
+ * memory, and on startup the whole file is replayed to rebuild the accounts. Each record is framed as
+ * {@code length, payload, crc32}; a record cut short by a crash fails the length or checksum check, and replay
+ * truncates the file back to the last complete record.
+ *
+ * Timestamps are written as epoch milliseconds. Journals from before that carry them as text in the record types
+ * marked legacy, which are still replayed but no longer written.
+ *
+ * Transfer records carry the debit and the credit as applied, each in minor units of its account's currency, so
+ * replay never converts with exchange rates that may have changed since. Transfers journalled before currency
+ * conversion only carry the amount and are replayed as {@link Listener#unconvertedTransfer}.
+ */
+public class AccountJournal implements AutoCloseable {
+    static final byte LEGACY_ACCOUNT_CREATED = 1;
+    static final byte LEGACY_TRANSFER = 2;
+    static final byte ACCOUNTS_CLEARED = 3;
+    static final byte TRANSACTIONS_CLEARED = 4;
+    static final byte LEGACY_TRANSFER_BATCH = 5;
+    static final byte ACCOUNT_CREATED = 6;
+    static final byte UNCONVERTED_TRANSFER = 7;
+    static final byte UNCONVERTED_TRANSFER_BATCH = 8;
+    static final byte TRANSFER = 9;
+    static final byte TRANSFER_BATCH = 10;
+    static final byte ACCOUNTS_IMPORTED = 11;
+
+    private final Logger logger = LoggerFactory.getLogger(AccountJournal.class);
+    private final Path path;
+    private final boolean sync;
+    private final FileChannel channel;
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(128);
+    private final DataOutputStream payload = new DataOutputStream(payloadBuffer);
+    private final CRC32 crc = new CRC32();
+
+    public interface Listener {
+        void accountCreated(long id, long balanceMinorUnits, String currency, long createdAt);
+
+        void transfer(long transactionId, long sourceAccountId, long destinationAccountId, long amountMinorUnits,
+                      String currency, long debitMinorUnits, long creditMinorUnits, long createdAt);
+
+        /**
+         * A transfer journalled before transfers could change currency, the amount moved on both sides.
+         */
+        void unconvertedTransfer(long transactionId, long sourceAccountId, long destinationAccountId,
+                                 long amountMinorUnits, String currency, long createdAt);
+
+        void accountsCleared();
+
+        void transactionsCleared();
+    }
+
+    public AccountJournal(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Feeds every complete record to the listener and leaves the journal positioned for appending.
+     */
+    public synchronized void replay(Listener listener) throws IOException {
+        long validLength = 0;
+        long records = 0;
+        channel.position(0);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        DataInputStream data = new DataInputStream(in);
+        while (true) {
+            byte[] record;
+            try {
+                int length = data.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                record = new byte[length];
+                data.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (data.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            applyRecord(record, listener);
+            validLength += Integer.BYTES + record.length + Integer.BYTES;
+            records++;
+        }
+
+        if (validLength < channel.size()) {
+            logger.warn("Journal {} has an incomplete tail, truncating from {} to {} bytes", path, channel.size(),
+                    validLength);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        logger.info("Replayed {} journal records from {}", records, path);
+    }
+
+    public synchronized void appendAccountCreated(long id, long balanceMinorUnits, String currency, long createdAt)
+            throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(ACCOUNT_CREATED);
+        payload.writeLong(id);
+        payload.writeLong(balanceMinorUnits);
+        payload.writeUTF(currency);
+        payload.writeLong(createdAt);
+        writeRecord();
+    }
+
+    /**
+     * Writes an import as one record, so after a crash either every imported account is replayed or none is. The
+     * balances must already be in minor units of each account's currency.
+     */
+    public synchronized void appendAccountsImported(List<Account> accounts) throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(ACCOUNTS_IMPORTED);
+        payload.writeInt(accounts.size());
+        for (Account account : accounts) {
+            payload.writeLong(account.getId());
+            payload.writeLong(account.getBalance().getMinorUnits());
+            payload.writeUTF(account.getCurrency());
+            payload.writeLong(account.getCreatedAt());
+        }
+        writeRecord();
+    }
+
+    public synchronized void appendTransfer(long transactionId, long sourceAccountId, long destinationAccountId,
+                                            long amountMinorUnits, String currency, long debitMinorUnits,
+                                            long creditMinorUnits, long createdAt) throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(TRANSFER);
+        payload.writeLong(transactionId);
+        payload.writeLong(sourceAccountId);
+        payload.writeLong(destinationAccountId);
+        payload.writeLong(amountMinorUnits);
+        payload.writeUTF(currency);
+        payload.writeLong(debitMinorUnits);
+        payload.writeLong(creditMinorUnits);
+        payload.writeLong(createdAt);
+        writeRecord();
+    }
+
+    /**
+     * Writes several transfers as one record, so after a crash either all of them are replayed or none are.
+     */
+    public synchronized void appendTransferBatch(List<Transfer> transfers, long[] transactionIds,
+                                                 long[] amountsMinorUnits, long[] debitsMinorUnits,
+                                                 long[] creditsMinorUnits) throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(TRANSFER_BATCH);
+        payload.writeInt(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            payload.writeLong(transactionIds[i]);
+            payload.writeLong(transfer.getSourceAccountId());
+            payload.writeLong(transfer.getDestinationAccountId());
+            payload.writeLong(amountsMinorUnits[i]);
+            payload.writeUTF(transfer.getCurrency());
+            payload.writeLong(debitsMinorUnits[i]);
+            payload.writeLong(creditsMinorUnits[i]);
+            payload.writeLong(transfer.getCreatedAt());
+        }
+        writeRecord();
+    }
+
+    public synchronized void appendAccountsCleared() throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(ACCOUNTS_CLEARED);
+        writeRecord();
+    }
+
+    public synchronized void appendTransactionsCleared() throws IOException {
+        payloadBuffer.reset();
+        payload.writeByte(TRANSACTIONS_CLEARED);
+        writeRecord();
+    }
+
+    private void writeRecord() throws IOException {
+        byte[] record = payloadBuffer.toByteArray();
+        crc.reset();
+        crc.update(record);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + record.length + Integer.BYTES);
+        frame.putInt(record.length).put(record).putInt((int) crc.getValue()).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    private void applyRecord(byte[] record, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        switch (type) {
+            case ACCOUNT_CREATED:
+                listener.accountCreated(in.readLong(), in.readLong(), in.readUTF(), in.readLong());
+                break;
+            case ACCOUNTS_IMPORTED:
+                int importedCount = in.readInt();
+                for (int i = 0; i < importedCount; i++) {
+                    listener.accountCreated(in.readLong(), in.readLong(), in.readUTF(), in.readLong());
+                }
+                break;
+            case TRANSFER:
+                listener.transfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readUTF(),
+                        in.readLong(), in.readLong(), in.readLong());
+                break;
+            case TRANSFER_BATCH:
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    listener.transfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readUTF(),
+                            in.readLong(), in.readLong(), in.readLong());
+                }
+                break;
+            case UNCONVERTED_TRANSFER:
+                listener.unconvertedTransfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                        in.readUTF(), in.readLong());
+                break;
+            case UNCONVERTED_TRANSFER_BATCH:
+                int unconvertedCount = in.readInt();
+                for (int i = 0; i < unconvertedCount; i++) {
+                    listener.unconvertedTransfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                            in.readUTF(), in.readLong());
+                }
+                break;
+            case LEGACY_ACCOUNT_CREATED:
+                listener.accountCreated(in.readLong(), in.readLong(), in.readUTF(), legacyTimestamp(in.readUTF()));
+                break;
+            case LEGACY_TRANSFER:
+                listener.unconvertedTransfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                        in.readUTF(), legacyTimestamp(in.readUTF()));
+                break;
+            case LEGACY_TRANSFER_BATCH:
+                int legacyCount = in.readInt();
+                for (int i = 0; i < legacyCount; i++) {
+                    listener.unconvertedTransfer(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                            in.readUTF(), legacyTimestamp(in.readUTF()));
+                }
+                break;
+            case ACCOUNTS_CLEARED:
+                listener.accountsCleared();
+                break;
+            case TRANSACTIONS_CLEARED:
+                listener.transactionsCleared();
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type + " in " + path);
+        }
+    }
+
+    private static long legacyTimestamp(String createdAt) {
+        try {
+            return Timestamps.parse(createdAt);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
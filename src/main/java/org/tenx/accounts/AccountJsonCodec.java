@@ -0,0 +1,140 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Writes accounts as JSON field by field, in the same shape Jackson produces for {@link Account}, without first
+ * building an {@link Account} or a list of them. Used to stream account listings straight from the source rows.
+ *
+ * Also reads account creation requests straight from the request body with a streaming parser, accepting what
+ * Jackson's data binding accepted (numeric strings for numbers, unknown fields rejected) without reflection.
+ */
+public final class AccountJsonCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private AccountJsonCodec() {
+    }
+
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    public static JsonGenerator createGenerator(Writer out) throws IOException {
+        return JSON_FACTORY.createGenerator(out);
+    }
+
+    public static JsonParser createParser(InputStream in) throws IOException {
+        return JSON_FACTORY.createParser(in);
+    }
+
+    public static void writeAccount(JsonGenerator generator, long id, long balanceMinorUnits, int exponent,
+                                    String currency, long createdAt) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeFieldName("balance");
+        generator.writeNumber(Money.format(balanceMinorUnits, exponent));
+        generator.writeStringField("currency", currency);
+        generator.writeStringField("createdAt", Timestamps.format(createdAt));
+        generator.writeEndObject();
+    }
+
+    public static String toJson(Account account) throws IOException {
+        StringWriter out = new StringWriter(128);
+        try (JsonGenerator generator = createGenerator(out)) {
+            Money balance = account.getBalance();
+            writeAccount(generator, account.getId(), balance.getMinorUnits(), balance.getExponent(),
+                    account.getCurrency(), account.getCreatedAt());
+        }
+        return out.toString();
+    }
+
+    public static Account readAccount(InputStream in) throws IOException {
+        try (JsonParser parser = createParser(in)) {
+            startObject(parser, parser.nextToken());
+            return readAccountFields(parser);
+        }
+    }
+
+    /**
+     * Reads the fields of the account object the parser has just entered, leaving it on the closing brace.
+     */
+    static Account readAccountFields(JsonParser parser) throws IOException {
+        Account account = new Account();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    account.setId(readLong(parser));
+                    break;
+                case "balance":
+                    account.setBalance(Money.read(parser));
+                    break;
+                case "currency":
+                    account.setCurrency(readString(parser));
+                    break;
+                case "createdAt":
+                    account.setCreatedAt(Timestamps.read(parser));
+                    break;
+                default:
+                    throw unknownField(parser, field);
+            }
+        }
+        return account;
+    }
+
+    static void startObject(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new JsonParseException(parser, "No content to read");
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+        }
+    }
+
+    static long readLong(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getValueAsLong();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Long.parseLong(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new JsonParseException(parser, parser.getText() + " is not a whole number");
+    }
+
+    static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        throw new JsonParseException(parser, "Expected a string but found " + token);
+    }
+
+    static JsonParseException unknownField(JsonParser parser, String field) {
+        return new JsonParseException(parser, "Unrecognized field \"" + field + "\"");
+    }
+}
@@ -0,0 +1,156 @@
+package org.tenx.accounts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage engine behind the REST endpoints. {@link DatabaseOperations} keeps everything in SQLite,
+ * {@link InMemoryAccountStore} keeps accounts in memory and recovers them from an append-only journal. The engine
+ * is picked with {@code tenx.engine}. Every engine returns the same response strings so clients cannot tell them
+ * apart.
+ */
+public interface AccountStore extends AutoCloseable {
+
+    String getAccountDetails() throws IOException, SQLException;
+
+    /**
+     * Keyset pagination: up to limit accounts with an ID greater than afterId, in ID order. Pass the last ID of
+     * a page as afterId to fetch the next one.
+     */
+    String getAccountDetails(long afterId, int limit) throws IOException, SQLException;
+
+    /**
+     * Writes every account as a JSON array, in ID order, without holding the whole listing in memory.
+     */
+    void writeAccountDetails(OutputStream out) throws IOException, SQLException;
+
+    String getAccountDetails(long id) throws IOException, SQLException;
+
+    String createAccountEntry(Account account) throws IOException, SQLException;
+
+    /**
+     * Creates every account the reader yields, all or nothing: if one has a balance its currency cannot hold or an
+     * ID that is already taken, none are created. Accounts keep the createdAt they were read with.
+     *
+     * @return how many accounts were imported, or why none were
+     */
+    String importAccounts(AccountFormat.AccountReader accounts) throws IOException, SQLException;
+
+    /**
+     * Writes every account, in ID order, without holding the whole listing in memory, then finishes the writer.
+     */
+    void exportAccounts(AccountFormat.AccountWriter out) throws IOException, SQLException;
+
+    String handleTransaction(Transfer transactionDetails) throws IOException, SQLException;
+
+    /**
+     * Applies the transfers in order and returns one result per transfer, in the same order. In all-or-nothing
+     * mode either every transfer is applied or none is.
+     */
+    List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing)
+            throws IOException, SQLException;
+
+    /**
+     * One page of the transfers into or out of an account with from <= createdAt < to, newest first, as
+     * {@code {"transactions": [...], "nextCursor": ...}}. Pass nextCursor back as after for the following page; it
+     * is null on the last page.
+     *
+     * @throws UnsupportedOperationException if the engine keeps no transaction history
+     */
+    default String getTransactionHistory(long accountId, long from, long to, HistoryCursor after, int limit)
+            throws IOException, SQLException {
+        throw new UnsupportedOperationException("This storage engine keeps no queryable transaction history");
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the engine keeps no transaction history
+     */
+    default String getTransaction(long transactionId) throws IOException, SQLException {
+        throw new UnsupportedOperationException("This storage engine keeps no queryable transaction history");
+    }
+
+    /**
+     * Accounts whose stored balance no longer matches the ledger, as found by the background reconciliation.
+     *
+     * @throws UnsupportedOperationException if the engine does not reconcile balances
+     */
+    default String getReconciliationReport() throws IOException {
+        throw new UnsupportedOperationException("This storage engine does not reconcile balances");
+    }
+
+    /**
+     * Starts moving the transactions created before the cutoff out of the live ledger into an archive, in the
+     * background and a chunk at a time so transfers keep running.
+     *
+     * @param before epoch milliseconds
+     * @throws UnsupportedOperationException if the engine does not archive transactions
+     */
+    default String archiveTransactions(long before) {
+        throw new UnsupportedOperationException("This storage engine does not archive transactions");
+    }
+
+    /**
+     * The progress of the current or last archive run.
+     *
+     * @throws UnsupportedOperationException if the engine does not archive transactions
+     */
+    default String getArchiveStatus() throws IOException {
+        throw new UnsupportedOperationException("This storage engine does not archive transactions");
+    }
+
+    String clearTables(String tableName);
+
+    /**
+     * Registers an action to run each time reads move on to a newer copy of the data, after which anything read
+     * from the older copy is out of date. Engines whose reads always see the latest writes never run it.
+     */
+    default void addReadRefreshListener(Runnable listener) {
+    }
+
+    @Override
+    void close() throws IOException, SQLException;
+
+    static AccountStore create(BankProperties properties) throws IOException {
+        return create(properties, BankMetrics.global());
+    }
+
+    /**
+     * Builds the configured engine, wrapped in a {@link CachingAccountStore} when {@code tenx.cache.enabled}, then
+     * an {@link InstrumentedAccountStore} so cache hits are timed as well, and an {@link IdempotentAccountStore} on
+     * the outside when {@code tenx.idempotency.enabled}. A replayed transfer is only counted as a replay, never
+     * again as a transfer or in the audit log.
+     */
+    static AccountStore create(BankProperties properties, BankMetrics metrics) throws IOException {
+        return create(properties, metrics, new FxRateTable(properties.getFx()));
+    }
+
+    static AccountStore create(BankProperties properties, BankMetrics metrics, FxRateTable exchangeRates)
+            throws IOException {
+        AccountStore store;
+        String engine = properties.getEngine();
+        if (engine.equalsIgnoreCase("sqlite")) {
+            store = new DatabaseOperations(properties.getDb(), metrics, exchangeRates);
+        } else if (engine.equalsIgnoreCase("memory")) {
+            store = new InMemoryAccountStore(properties.getMemory(), exchangeRates);
+        } else {
+            throw new IllegalArgumentException("Unknown storage engine " + engine
+                    + ". Use either [sqlite] or [memory]");
+        }
+
+        if (properties.getCache().isEnabled()) {
+            AccountCache cache = new AccountCache(properties.getCache());
+            cache.registerMetrics(metrics.getRegistry());
+            store = new CachingAccountStore(store, cache);
+        }
+        store = new InstrumentedAccountStore(store, metrics, new AuditLog(properties.getAudit()));
+
+        if (properties.getIdempotency().isEnabled()) {
+            IdempotencyIndex index = new IdempotencyIndex(properties.getIdempotency());
+            index.registerMetrics(metrics.getRegistry());
+            store = new IdempotentAccountStore(store, index);
+        }
+        return store;
+    }
+}
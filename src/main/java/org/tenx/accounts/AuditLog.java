@@ -0,0 +1,114 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes one audit record per transfer, or per batch, to the {@code org.tenx.accounts.audit} logger instead of a
+ * handful of lines from inside the engines. Successful transfers are sampled at {@code tenx.audit.sample-rate};
+ * failed ones are always written while {@code tenx.audit.log-failures} is on. Nothing is formatted unless the
+ * record is kept, so a sampled out transfer costs one random number.
+ *
+ * Records are {@code key=value} text, or a JSON object when {@code tenx.audit.structured} is on, for log shippers
+ * that parse the message.
+ */
+public class AuditLog {
+    private static final Logger logger = LoggerFactory.getLogger("org.tenx.accounts.audit");
+
+    private final double sampleRate;
+    private final boolean logFailures;
+    private final boolean structured;
+
+    public AuditLog(AuditSettings settings) {
+        this.sampleRate = settings.getSampleRate();
+        this.logFailures = settings.isLogFailures();
+        this.structured = settings.isStructured();
+    }
+
+    public void transfer(Transfer transfer, BankMetrics.Outcome outcome, long durationNanos) {
+        if (!keep(outcome == BankMetrics.Outcome.SUCCESS)) {
+            return;
+        }
+        Record record = new Record("transfer");
+        if (outcome == BankMetrics.Outcome.SUCCESS) {
+            record.field("id", transfer.getId());
+        }
+        record.field("source", transfer.getSourceAccountId())
+                .field("destination", transfer.getDestinationAccountId())
+                .field("amount", String.valueOf(transfer.getAmount()))
+                .field("currency", transfer.getCurrency())
+                .field("outcome", outcome.name())
+                .field("micros", durationNanos / 1000);
+        logger.info(record.finish());
+    }
+
+    public void transferBatch(int transfers, int succeeded, boolean allOrNothing, long durationNanos) {
+        if (!keep(succeeded == transfers)) {
+            return;
+        }
+        logger.info(new Record("transfer_batch")
+                .field("transfers", transfers)
+                .field("succeeded", succeeded)
+                .field("all_or_nothing", allOrNothing)
+                .field("micros", durationNanos / 1000)
+                .finish());
+    }
+
+    private boolean keep(boolean successful) {
+        if (!logger.isInfoEnabled()) {
+            return false;
+        }
+        if (!successful && logFailures) {
+            return true;
+        }
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private final class Record {
+        private final StringBuilder text = new StringBuilder(160);
+
+        Record(String event) {
+            if (structured) {
+                text.append("{\"event\":\"").append(event).append('"');
+            } else {
+                text.append(event);
+            }
+        }
+
+        Record field(String key, long value) {
+            start(key).append(value);
+            return this;
+        }
+
+        Record field(String key, boolean value) {
+            start(key).append(value);
+            return this;
+        }
+
+        Record field(String key, String value) {
+            StringBuilder out = start(key);
+            if (value == null) {
+                out.append("null");
+            } else {
+                out.append('"');
+                JsonStringEncoder.getInstance().quoteAsString(value, out);
+                out.append('"');
+            }
+            return this;
+        }
+
+        private StringBuilder start(String key) {
+            if (structured) {
+                return text.append(",\"").append(key).append("\":");
+            }
+            return text.append(' ').append(key).append('=');
+        }
+
+        String finish() {
+            return structured ? text.append('}').toString() : text.toString();
+        }
+    }
+}
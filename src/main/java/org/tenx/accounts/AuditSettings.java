@@ -0,0 +1,34 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for the {@link AuditLog}, bound from {@code tenx.audit.*}.
+ */
+public class AuditSettings {
+    private double sampleRate = 0.01;
+    private boolean logFailures = true;
+    private boolean structured = false;
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean isLogFailures() {
+        return logFailures;
+    }
+
+    public void setLogFailures(boolean logFailures) {
+        this.logFailures = logFailures;
+    }
+
+    public boolean isStructured() {
+        return structured;
+    }
+
+    public void setStructured(boolean structured) {
+        this.structured = structured;
+    }
+}
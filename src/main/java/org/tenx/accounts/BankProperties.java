@@ -0,0 +1,60 @@
+package org.tenx.accounts;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "tenx")
+public class BankProperties {
+    private String engine = "sqlite";
+    private int maxPageSize = 1000;
+    private final DatabaseSettings db = new DatabaseSettings();
+    private final InMemorySettings memory = new InMemorySettings();
+    private final CacheSettings cache = new CacheSettings();
+    private final AuditSettings audit = new AuditSettings();
+    private final ExecutorSettings executor = new ExecutorSettings();
+    private final FxSettings fx = new FxSettings();
+    private final IdempotencySettings idempotency = new IdempotencySettings();
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    public DatabaseSettings getDb() {
+        return db;
+    }
+
+    public InMemorySettings getMemory() {
+        return memory;
+    }
+
+    public CacheSettings getCache() {
+        return cache;
+    }
+
+    public AuditSettings getAudit() {
+        return audit;
+    }
+
+    public ExecutorSettings getExecutor() {
+        return executor;
+    }
+
+    public FxSettings getFx() {
+        return fx;
+    }
+
+    public IdempotencySettings getIdempotency() {
+        return idempotency;
+    }
+}
@@ -0,0 +1,34 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for the {@link AccountCache}, bound from {@code tenx.cache.*}.
+ */
+public class CacheSettings {
+    private boolean enabled = true;
+    private int maxEntries = 100000;
+    private long ttlMillis = 5000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+}
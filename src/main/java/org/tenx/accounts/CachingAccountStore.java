@@ -0,0 +1,150 @@
+package org.tenx.accounts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Puts an {@link AccountCache} in front of any storage engine for single account reads. Every write that can
+ * change an account invalidates it once the engine has returned, that is after the change is committed.
+ *
+ * An engine reading from a periodic snapshot may still serve the account as it was before the change, until its
+ * next refresh. The whole cache is dropped at every refresh, so such a response is never kept for longer than
+ * the snapshot itself is behind.
+ */
+public class CachingAccountStore implements AccountStore {
+    private final AccountStore delegate;
+    private final AccountCache cache;
+
+    public CachingAccountStore(AccountStore delegate, AccountCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+        delegate.addReadRefreshListener(cache::invalidateAll);
+    }
+
+    public AccountCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String getAccountDetails(long id) throws IOException, SQLException {
+        String cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        String response = delegate.getAccountDetails(id);
+        cache.put(id, response, stamp);
+        return response;
+    }
+
+    @Override
+    public String getAccountDetails() throws IOException, SQLException {
+        return delegate.getAccountDetails();
+    }
+
+    @Override
+    public String getAccountDetails(long afterId, int limit) throws IOException, SQLException {
+        return delegate.getAccountDetails(afterId, limit);
+    }
+
+    @Override
+    public void writeAccountDetails(OutputStream out) throws IOException, SQLException {
+        delegate.writeAccountDetails(out);
+    }
+
+    @Override
+    public String getTransactionHistory(long accountId, long from, long to, HistoryCursor after, int limit)
+            throws IOException, SQLException {
+        return delegate.getTransactionHistory(accountId, from, to, after, limit);
+    }
+
+    @Override
+    public String getTransaction(long transactionId) throws IOException, SQLException {
+        return delegate.getTransaction(transactionId);
+    }
+
+    @Override
+    public String createAccountEntry(Account account) throws IOException, SQLException {
+        try {
+            return delegate.createAccountEntry(account);
+        } finally {
+            cache.invalidate(account.getId());
+        }
+    }
+
+    /**
+     * Drops the whole cache afterwards, it may hold not found responses for any of the imported IDs.
+     */
+    @Override
+    public String importAccounts(AccountFormat.AccountReader accounts) throws IOException, SQLException {
+        try {
+            return delegate.importAccounts(accounts);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void exportAccounts(AccountFormat.AccountWriter out) throws IOException, SQLException {
+        delegate.exportAccounts(out);
+    }
+
+    @Override
+    public String handleTransaction(Transfer transactionDetails) throws IOException, SQLException {
+        try {
+            return delegate.handleTransaction(transactionDetails);
+        } finally {
+            cache.invalidate(transactionDetails.getSourceAccountId());
+            cache.invalidate(transactionDetails.getDestinationAccountId());
+        }
+    }
+
+    @Override
+    public List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing)
+            throws IOException, SQLException {
+        try {
+            return delegate.handleTransactionBatch(transfers, allOrNothing);
+        } finally {
+            for (Transfer transfer : transfers) {
+                cache.invalidate(transfer.getSourceAccountId());
+                cache.invalidate(transfer.getDestinationAccountId());
+            }
+        }
+    }
+
+    @Override
+    public String getReconciliationReport() throws IOException {
+        return delegate.getReconciliationReport();
+    }
+
+    @Override
+    public String archiveTransactions(long before) {
+        return delegate.archiveTransactions(before);
+    }
+
+    @Override
+    public String getArchiveStatus() throws IOException {
+        return delegate.getArchiveStatus();
+    }
+
+    @Override
+    public void addReadRefreshListener(Runnable listener) {
+        delegate.addReadRefreshListener(listener);
+    }
+
+    @Override
+    public String clearTables(String tableName) {
+        try {
+            return delegate.clearTables(tableName);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,172 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of SQLite connections. Every connection is opened up front and handed to one thread at a
+ * time, so request threads no longer share a single {@link Connection}. Each pooled connection keeps its own
+ * prepared-statement cache, see {@link PooledConnection#prepare(SqlStatement)}.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final BlockingQueue<PooledConnection> idleConnections;
+    private final List<PooledConnection> allConnections = new ArrayList<>();
+    private final long borrowTimeoutMillis;
+    private final BankMetrics metrics;
+    private final AtomicInteger borrowed = new AtomicInteger();
+    private final AtomicBoolean retirementFinished = new AtomicBoolean();
+    private volatile Runnable onRetired;
+    private volatile boolean closed;
+
+    public ConnectionPool(DatabaseSettings settings, BankMetrics metrics) throws SQLException {
+        this(settings.getUrl(), settings.getPoolSize(), settings.toConnectionProperties(),
+                settings.getPoolTimeoutMillis(), metrics);
+        Gauge.builder("tenx.db.pool.idle", idleConnections, BlockingQueue::size)
+                .description("Pooled connections not borrowed by any thread")
+                .tag("pool", "write")
+                .register(metrics.getRegistry());
+    }
+
+    /**
+     * Opens a pool of read-only connections, which SQLite refuses to write through. Registers no metrics, the
+     * caller may replace it, see {@link ReadReplica}.
+     */
+    static ConnectionPool readOnly(String url, DatabaseSettings settings, BankMetrics metrics) throws SQLException {
+        return new ConnectionPool(url, settings.getReadPoolSize(), settings.toReadOnlyConnectionProperties(),
+                settings.getPoolTimeoutMillis(), metrics);
+    }
+
+    private ConnectionPool(String url, int poolSize, Properties connectionProperties, long borrowTimeoutMillis,
+                           BankMetrics metrics) throws SQLException {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1 but was " + poolSize);
+        }
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleConnections = new ArrayBlockingQueue<>(poolSize);
+        this.metrics = metrics;
+
+        logger.info("Opening {} pooled connections to {}", poolSize, url);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                PooledConnection pooledConnection = new PooledConnection(
+                        DriverManager.getConnection(url, connectionProperties), this, metrics);
+                allConnections.add(pooledConnection);
+                idleConnections.add(pooledConnection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        // counted before the check, so retire either waits for this borrower or it sees the pool closed
+        borrowed.incrementAndGet();
+        if (closed) {
+            returned();
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        PooledConnection pooledConnection = null;
+        try {
+            pooledConnection = idleConnections.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            metrics.recordPoolWait(start);
+            if (pooledConnection == null) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a DB connection");
+            }
+            return pooledConnection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        } finally {
+            if (pooledConnection == null) {
+                returned();
+            }
+        }
+    }
+
+    void release(PooledConnection pooledConnection) {
+        try {
+            pooledConnection.reset();
+        } catch (SQLException e) {
+            logger.error("Failed to reset pooled connection {}", e.getMessage());
+        }
+        if (closed) {
+            closePhysical(pooledConnection);
+        } else {
+            idleConnections.offer(pooledConnection);
+        }
+        returned();
+    }
+
+    private void returned() {
+        if (borrowed.decrementAndGet() == 0 && closed && onRetired != null) {
+            finishRetirement();
+        }
+    }
+
+    /**
+     * Refuses new borrowers straight away and closes the idle connections. Borrowed connections are closed as
+     * they come back, however long that takes, so a streamed response is never cut short. Once the last one is
+     * back the callback runs, on whichever thread returned it.
+     */
+    public void retire(Runnable onRetired) {
+        this.onRetired = onRetired;
+        closed = true;
+        closeIdleConnections();
+        if (borrowed.get() == 0) {
+            finishRetirement();
+        }
+    }
+
+    private void finishRetirement() {
+        if (retirementFinished.compareAndSet(false, true)) {
+            // a connection released just before the pool closed may have gone back to the idle queue
+            closeIdleConnections();
+            onRetired.run();
+        }
+    }
+
+    private void closeIdleConnections() {
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.poll()) != null) {
+            closePhysical(pooledConnection);
+        }
+    }
+
+    private void closePhysical(PooledConnection pooledConnection) {
+        try {
+            pooledConnection.closePhysical();
+        } catch (SQLException e) {
+            logger.error("Failed to close pooled connection {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (PooledConnection pooledConnection : allConnections) {
+            closePhysical(pooledConnection);
+        }
+        idleConnections.clear();
+    }
+}
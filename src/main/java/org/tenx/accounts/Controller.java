@@ -1,48 +1,299 @@
 package org.tenx.accounts;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @SpringBootApplication
-public class Controller {
+@EnableConfigurationProperties(BankProperties.class)
+public class Controller implements WebMvcConfigurer {
+    // the width of the ledger column keys are kept in
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
 
-    DatabaseOperations dbOps = new DatabaseOperations("jdbc:sqlite:10xBank");
+    AccountStore accountStore;
+    FxRateTable exchangeRates;
+    StoreExecutor storeExecutor;
+    boolean asyncExecution;
     ObjectMapper objectMapper = new ObjectMapper();
+    int maxPageSize;
 
+    public Controller(BankProperties properties, MeterRegistry meterRegistry) throws IOException {
+        exchangeRates = new FxRateTable(properties.getFx());
+        accountStore = AccountStore.create(properties, new BankMetrics(meterRegistry), exchangeRates);
+        storeExecutor = new StoreExecutor(properties.getExecutor(), meterRegistry);
+        asyncExecution = properties.getExecutor().isEnabled();
+        maxPageSize = properties.getMaxPageSize();
+    }
+
+    /**
+     * Streamed responses are written on the store executor too, so they count against the same bound.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (asyncExecution) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(storeExecutor));
+        }
+    }
+
+    /**
+     * Without parameters returns every account. With limit returns one page of accounts whose ID is greater than
+     * after; pass the last ID of a page as after to get the next one.
+     */
     @GetMapping("/getaccountstatus")
-    public String getAccountStatus() throws IOException, SQLException {
-        return dbOps.getAccountDetails();
+    public CompletableFuture<String> getAccountStatus(@RequestParam(required = false) Long after,
+                                                      @RequestParam(required = false) Integer limit) {
+        if (limit == null && after == null) {
+            return storeExecutor.submit(() -> accountStore.getAccountDetails());
+        }
+        int pageSize = limit == null ? maxPageSize : Math.max(0, Math.min(limit, maxPageSize));
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        return storeExecutor.submit(() -> accountStore.getAccountDetails(afterId, pageSize));
+    }
+
+    /**
+     * Streams every account as a JSON array, written row by row so memory use does not grow with the table.
+     */
+    @GetMapping(value = "/getaccountstatus", params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public StreamingResponseBody streamAccountStatus() {
+        return out -> {
+            try {
+                accountStore.writeAccountDetails(out);
+            } catch (SQLException e) {
+                throw new IOException("Streaming the accounts failed", e);
+            }
+        };
     }
 
     @GetMapping("/getaccountstatus/{id}")
-    public String getAccountStatus(@PathVariable long id) throws IOException, SQLException {
-        return dbOps.getAccountDetails(id);
+    public CompletableFuture<String> getAccountStatus(@PathVariable long id) {
+        return storeExecutor.submit(() -> accountStore.getAccountDetails(id));
     }
 
     @PostMapping("/createaccount")
-    public String createAccount(@RequestBody String body) throws IOException, SQLException {
-        Account accountCreationRequest = objectMapper.readValue(body, Account.class);
-        return dbOps.createAccountEntry(accountCreationRequest);
+    public CompletableFuture<String> createAccount(InputStream body) throws IOException {
+        Account accountCreationRequest = AccountJsonCodec.readAccount(body);
+        return storeExecutor.submit(() -> accountStore.createAccountEntry(accountCreationRequest));
     }
 
+    /**
+     * Creates accounts in bulk from csv, ndjson or a binary snapshot, all or nothing. The body is read as it
+     * arrives on the store executor, so an import of any size runs in constant memory with the sqlite engine and
+     * is refused like any other store call when the executor is full.
+     */
+    @PostMapping("/accounts/import")
+    public CompletableFuture<String> importAccounts(InputStream body,
+                                                    @RequestParam(defaultValue = "csv") String format) {
+        AccountFormat accountFormat = AccountFormat.of(format);
+        return storeExecutor.submit(() -> accountStore.importAccounts(accountFormat.openReader(body)));
+    }
+
+    /**
+     * Streams every account as csv, ndjson or a binary snapshot that {@code /accounts/import} reads back.
+     */
+    @GetMapping("/accounts/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts(@RequestParam(defaultValue = "csv") String format) {
+        AccountFormat accountFormat = AccountFormat.of(format);
+        StreamingResponseBody body = out -> {
+            try {
+                accountStore.exportAccounts(accountFormat.openWriter(out));
+            } catch (SQLException e) {
+                throw new IOException("Exporting the accounts failed", e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(accountFormat.getMediaType())).body(body);
+    }
+
+    /**
+     * A retry sent with the same Idempotency-Key as an earlier transfer gets that transfer's result back and
+     * moves no money. Reusing a key for a different transfer is refused with 422.
+     */
     @PostMapping("/transfer")
-    public String transfer(@RequestBody String body) throws IOException, SQLException {
-        Transfer transfer = objectMapper.readValue(body, Transfer.class);
-        return dbOps.handleTransaction(transfer);
+    public CompletableFuture<String> transfer(InputStream body,
+                                              @RequestHeader(name = "Idempotency-Key", required = false)
+                                                      String idempotencyKey) throws IOException {
+        Transfer transfer = TransferJsonCodec.readTransfer(body);
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH +
+                        " characters");
+            }
+            transfer.setIdempotencyKey(idempotencyKey);
+        }
+        return storeExecutor.submit(() -> accountStore.handleTransaction(transfer));
+    }
+
+    /**
+     * Accepts either a JSON array of transfers or newline delimited JSON, one transfer per line. Returns a JSON
+     * array with one result per transfer, in request order.
+     */
+    @PostMapping("/transfers/batch")
+    public CompletableFuture<ResponseEntity<byte[]>> transferBatch(
+            InputStream body, @RequestParam(defaultValue = "best-effort") String mode) throws IOException {
+        boolean allOrNothing;
+        if (mode.equalsIgnoreCase("atomic")) {
+            allOrNothing = true;
+        } else if (mode.equalsIgnoreCase("best-effort")) {
+            allOrNothing = false;
+        } else {
+            return CompletableFuture.completedFuture(ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+                    .body("Invalid mode. Mode either [atomic] or [best-effort]".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        List<Transfer> transfers = TransferJsonCodec.readTransfers(body);
+        return storeExecutor.submit(() -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(TransferJsonCodec.writeResults(accountStore.handleTransactionBatch(transfers, allOrNothing))));
+    }
+
+    /**
+     * Transfers into and out of the account, newest first. from and to bound createdAt (from inclusive, to
+     * exclusive) and take epoch milliseconds or {@code yyyy-MM-dd HH:mm:ss}; pass the nextCursor of a page as
+     * cursor to get the next one.
+     */
+    @GetMapping("/accounts/{id}/transactions")
+    public CompletableFuture<String> getTransactionHistory(@PathVariable long id,
+                                                           @RequestParam(required = false) String from,
+                                                           @RequestParam(required = false) String to,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer limit) {
+        long fromMillis = from == null ? Long.MIN_VALUE : parseTime("from", from);
+        long toMillis = to == null ? Long.MAX_VALUE : parseTime("to", to);
+        HistoryCursor after = cursor == null ? null : HistoryCursor.decode(cursor);
+        int pageSize = limit == null ? maxPageSize : Math.max(0, Math.min(limit, maxPageSize));
+        return storeExecutor.submit(() ->
+                accountStore.getTransactionHistory(id, fromMillis, toMillis, after, pageSize));
+    }
+
+    @GetMapping("/transactions/{transactionId}")
+    public CompletableFuture<String> getTransaction(@PathVariable long transactionId) {
+        return storeExecutor.submit(() -> accountStore.getTransaction(transactionId));
+    }
+
+    /**
+     * Starts archiving the transactions created before the cutoff, epoch milliseconds or
+     * {@code yyyy-MM-dd HH:mm:ss}. Returns straight away; GET the same path to follow the run.
+     */
+    @PostMapping("/transactions/archive")
+    public CompletableFuture<String> archiveTransactions(@RequestParam String before) {
+        long beforeMillis = parseTime("before", before);
+        return storeExecutor.submit(() -> accountStore.archiveTransactions(beforeMillis));
+    }
+
+    @GetMapping("/transactions/archive")
+    public CompletableFuture<String> archiveStatus() {
+        return storeExecutor.submit(() -> accountStore.getArchiveStatus());
+    }
+
+    private static long parseTime(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return Timestamps.parse(value);
+            } catch (DateTimeParseException notText) {
+                throw new IllegalArgumentException(name + " must be epoch milliseconds or yyyy-MM-dd HH:mm:ss");
+            }
+        }
+    }
+
+    /**
+     * Re-reads the exchange rates file. Transfers already under way finish with the rates they started with.
+     */
+    @PostMapping("/fxrates/reload")
+    public CompletableFuture<String> reloadExchangeRates() {
+        return storeExecutor.submit(() -> "Loaded " + exchangeRates.reload() + " exchange rates");
+    }
+
+    @GetMapping("/reconciliation")
+    public CompletableFuture<String> reconciliationReport() {
+        return storeExecutor.submit(() -> accountStore.getReconciliationReport());
+    }
+
+    @GetMapping("/cachestats")
+    public String cacheStats() throws IOException {
+        AccountStore store = accountStore instanceof IdempotentAccountStore ?
+                ((IdempotentAccountStore) accountStore).getDelegate() : accountStore;
+        if (store instanceof InstrumentedAccountStore) {
+            store = ((InstrumentedAccountStore) store).getDelegate();
+        }
+        if (!(store instanceof CachingAccountStore)) {
+            return "The account cache is disabled";
+        }
+        AccountCache cache = ((CachingAccountStore) store).getCache();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", cache.getHits());
+        stats.put("misses", cache.getMisses());
+        stats.put("evictions", cache.getEvictions());
+        stats.put("size", (long) cache.size());
+        return objectMapper.writeValueAsString(stats);
     }
 
     @GetMapping("/clearalldata/{tablename}")
-    public String clearAllData(@PathVariable String tablename) {
-        return dbOps.clearTables(tablename);
+    public CompletableFuture<String> clearAllData(@PathVariable String tablename) {
+        return storeExecutor.submit(() -> accountStore.clearTables(tablename));
     }
 
     @GetMapping("/")
     public String onError() {
         return "Would you like to make some money? Read the README for more info!";
     }
+
+    @ExceptionHandler(JsonProcessingException.class)
+    public ResponseEntity<String> invalidRequestBody(JsonProcessingException e) {
+        return ResponseEntity.badRequest().body("Invalid request body. " + e.getOriginalMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> invalidParameter(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> idempotencyKeyReused(IdempotencyKeyReusedException e) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+    }
+
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<String> notSupported(UnsupportedOperationException e) {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(e.getMessage());
+    }
+
+    /**
+     * The store executor's queue is full; tell the client to back off rather than holding the request.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> tooManyRequests() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("The bank is busy, please retry shortly");
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, SQLException {
+        storeExecutor.close();
+        accountStore.close();
+    }
 }
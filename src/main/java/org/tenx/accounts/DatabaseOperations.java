@@ -1,197 +1,709 @@
 package org.tenx.accounts;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.math.BigDecimal;
 
 
-public class DatabaseOperations {
+public class DatabaseOperations implements AccountStore {
     private final Logger logger = LoggerFactory.getLogger(DatabaseOperations.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final DateTimeFormatter dbTimeStampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final DatabaseSettings settings;
+    private final BankMetrics metrics;
+    private final FxRateTable exchangeRates;
+
+    ConnectionPool connectionPool;
+    ReadReplica readReplica;
+    TransactionIdGenerator transactionIdGenerator;
+    GroupCommitter groupCommitter;
+    LedgerReconciler reconciler;
+    LedgerArchiver archiver;
+
+    public DatabaseOperations(String dbUrl) {
+        this(new DatabaseSettings(dbUrl));
+    }
+
+    public DatabaseOperations(DatabaseSettings settings) {
+        this(settings, BankMetrics.global());
+    }
 
-    Connection connection;
+    public DatabaseOperations(DatabaseSettings settings, BankMetrics metrics) {
+        this(settings, metrics, FxRateTable.of(FxRates.EMPTY));
+    }
 
-    public DatabaseOperations(String dbUrl)  {
+    public DatabaseOperations(DatabaseSettings settings, BankMetrics metrics, FxRateTable exchangeRates) {
         logger.info("Initializing the 10X bank DB");
+        this.settings = settings;
+        this.metrics = metrics;
+        this.exchangeRates = exchangeRates;
         try {
-            setConnection(dbUrl);
-            final String accountTableCreationFile = "src/main/resources/sql/AccountsTableCreation.sql";
-            final String transactionHistoryTableCreationFile = "src/main/resources/sql/TransactionsHistoryTableCreation.sql";
-
-            String accountsTableCreationQuery = getQueryFromFile(accountTableCreationFile);
-            String transactionTableCreationQuery = getQueryFromFile(transactionHistoryTableCreationFile);
-            executeUnitStatement(accountsTableCreationQuery);
-            executeUnitStatement(transactionTableCreationQuery);
+            try (Connection connection = DriverManager.getConnection(settings.getUrl(),
+                    settings.toConnectionProperties())) {
+                new SchemaMigrator(connection).migrate();
+            }
+            connectionPool = new ConnectionPool(settings, metrics);
+            readReplica = new ReadReplica(settings, metrics);
+            transactionIdGenerator = TransactionIdGenerator.create(settings, connectionPool);
+            reconciler = new LedgerReconciler(connectionPool, settings, metrics);
+            archiver = new LedgerArchiver(connectionPool, reconciler, settings, metrics);
+            if (settings.isGroupCommitEnabled()) {
+                groupCommitter = new GroupCommitter(connectionPool, settings, this::applyTransfer);
+            }
         } catch (Exception e) {
-            logger.error("Error starting the DB. Please fix and restart program." + e.getMessage());
+            logger.error("Error starting the DB. Please fix and restart program. {}", e.getMessage());
         }
     }
 
+    @Override
     public String getAccountDetails() throws IOException, SQLException {
-        logger.info("Retrieving all account details");
-        final String getAllAccountsQueryFile = "src/main/resources/sql/RetrieveAllAccountDetails.sql";
-        String accountsQuery = getQueryFromFile(getAllAccountsQueryFile);
-        ResultSet rs = executeStatement(accountsQuery);
-        List<Account> accounts = getListOfAccountsFromRs(rs);
-        return objectMapper.writeValueAsString(accounts);
+        logger.debug("Retrieving all account details");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAccountDetails(out);
+        return out.toString(StandardCharsets.UTF_8);
     }
 
-    public String getAccountDetails(long id) throws IOException, SQLException {
-        logger.info("Retrieving account details for " + id);
-        boolean accountExists = isAccountExists(id);
+    @Override
+    public String getAccountDetails(long afterId, int limit) throws IOException, SQLException {
+        logger.debug("Retrieving {} account details after {}", limit, afterId);
+        try (PooledConnection conn = readReplica.borrow()) {
+            PreparedStatement pageStatement = conn.prepare(SqlStatement.ACCOUNT_PAGE_RETRIEVAL);
+            pageStatement.setLong(1, afterId);
+            pageStatement.setInt(2, limit);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeAccountsFromRs(conn.executeQuery(SqlStatement.ACCOUNT_PAGE_RETRIEVAL), out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Streams the accounts table straight from the result set into a JSON array. The pooled connection is held
+     * until the last row has been written.
+     */
+    @Override
+    public void writeAccountDetails(OutputStream out) throws IOException, SQLException {
+        try (PooledConnection conn = readReplica.borrow()) {
+            PreparedStatement allAccountsStatement = conn.prepare(SqlStatement.RETRIEVE_ALL_ACCOUNT_DETAILS);
+            allAccountsStatement.setFetchSize(settings.getFetchSize());
+            writeAccountsFromRs(conn.executeQuery(SqlStatement.RETRIEVE_ALL_ACCOUNT_DETAILS), out);
+        }
+    }
+
+    /**
+     * Fetches one row more than the page so the cursor is only handed out when there is a next page. Both halves
+     * of the query, transfers out of and into the account, are index scans ending at the cursor.
+     */
+    @Override
+    public String getTransactionHistory(long accountId, long from, long to, HistoryCursor after, int limit)
+            throws IOException, SQLException {
+        logger.debug("Retrieving {} transactions of account {}", limit, accountId);
+        try (PooledConnection conn = readReplica.borrow()) {
+            PreparedStatement historyStatement = conn.prepare(SqlStatement.TRANSACTION_HISTORY);
+            historyStatement.setLong(1, accountId);
+            historyStatement.setLong(2, from);
+            historyStatement.setLong(3, to);
+            historyStatement.setLong(4, after == null ? Long.MAX_VALUE : after.getCreatedAt());
+            historyStatement.setLong(5, after == null ? Long.MAX_VALUE : after.getTransactionId());
+            historyStatement.setInt(6, limit + 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ResultSet rs = conn.executeQuery(SqlStatement.TRANSACTION_HISTORY);
+                 JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("transactions");
+                HistoryCursor last = null;
+                HistoryCursor next = null;
+                int written = 0;
+                while (rs.next()) {
+                    if (written == limit) {
+                        next = last;
+                        break;
+                    }
+                    long transactionId = rs.getLong("transactionId");
+                    long createdAt = rs.getLong("createdAt");
+                    TransferJsonCodec.writeTransaction(generator, transactionId, rs.getString("type"),
+                            rs.getLong("sourceId"), rs.getLong("destinationId"), rs.getLong("amount"),
+                            rs.getString("currency"), createdAt);
+                    last = new HistoryCursor(createdAt, transactionId);
+                    written++;
+                }
+                generator.writeEndArray();
+                generator.writeStringField("nextCursor", next == null ? null : next.encode());
+                generator.writeEndObject();
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
 
-        if (accountExists) {
-            ResultSet rs = getAccountResultSetFromDb(id);
-            List<Account> accounts = getListOfAccountsFromRs(rs);
-            return objectMapper.writeValueAsString(accounts.get(0));
-        } else {
-            return "Error the account with ID " + id + " does not exist.";
+    @Override
+    public String getTransaction(long transactionId) throws IOException, SQLException {
+        try (PooledConnection conn = readReplica.borrow()) {
+            conn.prepare(SqlStatement.TRANSACTION_RETRIEVAL).setLong(1, transactionId);
+            try (ResultSet rs = conn.executeQuery(SqlStatement.TRANSACTION_RETRIEVAL)) {
+                if (!rs.next()) {
+                    return "Error the transaction with ID " + transactionId + " does not exist.";
+                }
+                StringWriter out = new StringWriter(192);
+                try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+                    TransferJsonCodec.writeTransaction(generator, transactionId, rs.getString("type"),
+                            rs.getLong("sourceId"), rs.getLong("destinationId"), rs.getLong("amount"),
+                            rs.getString("currency"), rs.getLong("createdAt"));
+                }
+                return out.toString();
+            }
+        }
+    }
+
+    @Override
+    public String getReconciliationReport() throws IOException {
+        return reconciler.getReport();
+    }
+
+    @Override
+    public String archiveTransactions(long before) {
+        return archiver.start(before);
+    }
+
+    @Override
+    public String getArchiveStatus() throws IOException {
+        return archiver.getStatus();
+    }
+
+    private void writeAccountsFromRs(ResultSet rs, OutputStream out) throws IOException, SQLException {
+        try (rs; JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartArray();
+            while (rs.next()) {
+                String currency = rs.getString("currency");
+                AccountJsonCodec.writeAccount(generator, rs.getLong("id"), rs.getLong("balance"),
+                        Money.exponentOf(currency), currency, rs.getLong("createdAt"));
+            }
+            generator.writeEndArray();
         }
     }
 
+    @Override
+    public String getAccountDetails(long id) throws IOException, SQLException {
+        logger.debug("Retrieving account details for {}", id);
+        try (PooledConnection conn = readReplica.borrow()) {
+            List<Account> accounts = getListOfAccountsFromRs(getAccountResultSetFromDb(conn, id));
+
+            if (!accounts.isEmpty()) {
+                long start = System.nanoTime();
+                String json = AccountJsonCodec.toJson(accounts.get(0));
+                metrics.recordJsonSerialization(start);
+                return json;
+            } else {
+                return "Error the account with ID " + id + " does not exist.";
+            }
+        }
+    }
+
+    @Override
     public String createAccountEntry(Account account) throws IOException, SQLException {
-        logger.info("Verifying the account " + account.getId() + " does not exist");
+        logger.debug("Creating account {}", account.getId());
+        long balance;
+        try {
+            balance = account.getBalance().toMinorUnits(Money.exponentOf(account.getCurrency()));
+        } catch (ArithmeticException e) {
+            return TransferMessages.invalidAmount(account.getBalance(), account.getCurrency());
+        }
 
-        if (!isAccountExists(account.getId())) {
-            logger.info("Account " + account.getId() + " does not exist. It will be created");
-            executeAccountEntryStatement(account);
+        try (PooledConnection conn = connectionPool.borrow()) {
+            executeAccountEntryStatement(conn, account, balance);
             return "Account " + account.getId() + " created successfully";
-        } else {
+        } catch (SQLException e) {
+            if (getPrimaryResultCode(e) != SQLITE_CONSTRAINT) {
+                throw e;
+            }
             return "Account " + account.getId() + " already exists.";
         }
     }
 
+    /**
+     * Inserts the accounts in one write transaction, sent to SQLite in JDBC batches of
+     * {@code tenx.db.import-batch-size} so only one batch is held in memory at a time. Taken IDs are detected
+     * from the batch's update counts (the insert ignores conflicts) and roll the whole import back. Transfers
+     * wait for the write lock until the import commits.
+     */
+    @Override
+    public String importAccounts(AccountFormat.AccountReader accounts) throws IOException, SQLException {
+        try (PooledConnection conn = connectionPool.borrow()) {
+            PreparedStatement importStatement = conn.prepare(SqlStatement.IMPORT_ACCOUNT_ENTRY);
+            long[] batchIds = new long[Math.max(1, settings.getImportBatchSize())];
+            int batched = 0;
+            long imported = 0;
+            long importedAt = Timestamps.now();
+            conn.beginImmediate();
+            try {
+                Account account;
+                while ((account = accounts.next()) != null) {
+                    long balance;
+                    try {
+                        balance = account.getBalance().toMinorUnits(Money.exponentOf(account.getCurrency()));
+                    } catch (ArithmeticException e) {
+                        return TransferMessages.importInvalidBalance(account.getId(), account.getBalance(),
+                                account.getCurrency());
+                    }
+                    importStatement.setLong(1, account.getId());
+                    importStatement.setLong(2, balance);
+                    importStatement.setString(3, account.getCurrency());
+                    importStatement.setLong(4, account.getCreatedAt() == 0 ? importedAt : account.getCreatedAt());
+                    importStatement.setLong(5, balance);
+                    importStatement.addBatch();
+                    batchIds[batched++] = account.getId();
+                    if (batched == batchIds.length) {
+                        String failure = executeImportBatch(conn, batchIds);
+                        if (failure != null) {
+                            return failure;
+                        }
+                        imported += batched;
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    String failure = executeImportBatch(conn, batchIds);
+                    if (failure != null) {
+                        return failure;
+                    }
+                    imported += batched;
+                }
+                conn.commit();
+                logger.info("Imported {} accounts", imported);
+                return TransferMessages.imported(imported);
+            } finally {
+                // a no-op once committed
+                importStatement.clearBatch();
+                conn.rollback();
+            }
+        }
+    }
+
+    /**
+     * @return null if every account in the batch was inserted, otherwise the failure message
+     */
+    private String executeImportBatch(PooledConnection conn, long[] batchIds) throws SQLException {
+        int[] inserted = conn.executeBatch(SqlStatement.IMPORT_ACCOUNT_ENTRY);
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] == 0) {
+                return TransferMessages.importDuplicate(batchIds[i]);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void exportAccounts(AccountFormat.AccountWriter out) throws IOException, SQLException {
+        try (PooledConnection conn = readReplica.borrow()) {
+            PreparedStatement allAccountsStatement = conn.prepare(SqlStatement.RETRIEVE_ALL_ACCOUNT_DETAILS);
+            allAccountsStatement.setFetchSize(settings.getFetchSize());
+            try (ResultSet rs = conn.executeQuery(SqlStatement.RETRIEVE_ALL_ACCOUNT_DETAILS)) {
+                while (rs.next()) {
+                    String currency = rs.getString("currency");
+                    out.write(rs.getLong("id"), rs.getLong("balance"), Money.exponentOf(currency), currency,
+                            rs.getLong("createdAt"));
+                }
+            }
+            out.finish();
+        }
+    }
+
+    /**
+     * Runs a transfer as a single DB transaction: the account lookups, the conditional debit, the credit and the
+     * ledger entry are committed together, so a transfer costs one commit and can never be half applied. If
+     * SQLite reports the database as busy or locked the whole transaction is retried.
+     *
+     * With group commit enabled the transfer is instead handed to the {@link GroupCommitter} and shares its
+     * transaction and commit with the other transfers queued at the same time.
+     *
+     * A transfer with an idempotency key that is already on a ledger row is not applied again; the result names
+     * the transaction that row belongs to. If that row moved money between other accounts, or another amount or
+     * currency, the transfer fails with {@link IdempotencyKeyReusedException} instead.
+     */
+    @Override
     public String handleTransaction(Transfer transactionDetails) throws IOException, SQLException {
-        long sourceAccountId = transactionDetails.getSourceAccountId();
-        long destinationAccountId = transactionDetails.getDestinationAccountId();
-        double amount = transactionDetails.getAmount();
+        if (transactionDetails.getSourceAccountId() == transactionDetails.getDestinationAccountId()) {
+            return TransferMessages.accountError(transactionDetails.getSourceAccountId(),
+                    transactionDetails.getDestinationAccountId(), true, true, false);
+        }
 
-        ResultSet sourceRs = getAccountResultSetFromDb(sourceAccountId);
-        ResultSet destinationRs = getAccountResultSetFromDb(destinationAccountId);
+        // allocated before the write lock is taken, a sequence block reservation needs its own commit
+        long transactionId = transactionIdGenerator.nextId();
+        if (groupCommitter != null) {
+            return groupCommitter.submit(transactionDetails, transactionId);
+        }
 
-        boolean sourceAccExists = isAccountExists(sourceAccountId);
-        boolean destinationAccExists = isAccountExists(destinationAccountId);
-        boolean sourceDestinationAccountExist = sourceAccExists && destinationAccExists;
-        boolean sourceAndDestinationDiffer = sourceAccountId != destinationAccountId;
+        return inWriteTransaction(conn -> applyTransfer(conn, transactionDetails, transactionId));
+    }
 
-        logger.info("Source and destination account exist - " + sourceDestinationAccountExist);
+    /**
+     * Applies many transfers, chunk by chunk. Every chunk runs in one DB transaction and its ledger rows go in with
+     * a single JDBC batch. In best-effort mode every chunk commits on its own and a failed transfer only affects
+     * itself. In all-or-nothing mode all chunks share one transaction, which is rolled back at the first failed
+     * transfer.
+     */
+    @Override
+    public List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing)
+            throws IOException, SQLException {
+        logger.debug("Processing a batch of {} transfers, all or nothing - {}", transfers.size(), allOrNothing);
+        int chunkSize = settings.getBatchChunkSize();
+
+        if (allOrNothing) {
+            long[] transactionIds = allocateTransactionIds(transfers.size());
+            return inWriteTransaction(conn -> {
+                List<String> results = new ArrayList<>(transfers.size());
+                for (int from = 0; from < transfers.size(); from += chunkSize) {
+                    int to = Math.min(from + chunkSize, transfers.size());
+                    int failedIndex = applyBatchChunk(conn, transfers.subList(from, to),
+                            Arrays.copyOfRange(transactionIds, from, to), true, results);
+                    if (failedIndex >= 0) {
+                        conn.rollback();
+                        return TransferMessages.batchRolledBack(transfers.size(), from + failedIndex,
+                                results.get(from + failedIndex));
+                    }
+                }
+                return results;
+            });
+        }
+
+        List<String> results = new ArrayList<>(transfers.size());
+        for (int from = 0; from < transfers.size(); from += chunkSize) {
+            List<Transfer> chunk = transfers.subList(from, Math.min(from + chunkSize, transfers.size()));
+            long[] transactionIds = allocateTransactionIds(chunk.size());
+            List<String> chunkResults = new ArrayList<>(chunk.size());
+            inWriteTransaction(conn -> {
+                chunkResults.clear();
+                return applyBatchChunk(conn, chunk, transactionIds, false, chunkResults);
+            });
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    private long[] allocateTransactionIds(int count) throws SQLException {
+        long[] transactionIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            transactionIds[i] = transactionIdGenerator.nextId();
+        }
+        return transactionIds;
+    }
 
-        if (sourceDestinationAccountExist && sourceAndDestinationDiffer) {
+    /**
+     * Applies a chunk of transfers inside the caller's transaction, adding one result per transfer to results, and
+     * writes all their ledger rows with one executeBatch. With stopOnFailure it stops at the first transfer that
+     * fails its checks without writing any ledger rows.
+     *
+     * @return the index within the chunk of the transfer it stopped at, or -1
+     */
+    private int applyBatchChunk(PooledConnection conn, List<Transfer> chunk, long[] transactionIds,
+                                boolean stopOnFailure, List<String> results) throws SQLException {
+        PreparedStatement transactionHistoryStatement = conn.prepare(SqlStatement.UPDATE_TRANSACTION_HISTORY_QUERY);
+        long[] settled = new long[2];
+        for (int i = 0; i < chunk.size(); i++) {
+            String failure = applyBalanceUpdates(conn, chunk.get(i), settled);
+            if (failure != null) {
+                results.add(failure);
+                if (stopOnFailure) {
+                    transactionHistoryStatement.clearBatch();
+                    return i;
+                }
+                continue;
+            }
+            bindTransactionsHistoryEntry(transactionHistoryStatement, chunk.get(i), transactionIds[i], settled);
+            transactionHistoryStatement.addBatch();
+            results.add(TransferMessages.successful(transactionIds[i]));
+        }
+        conn.executeBatch(SqlStatement.UPDATE_TRANSACTION_HISTORY_QUERY);
+        return -1;
+    }
 
-            Account sourceAccount = getListOfAccountsFromRs(sourceRs).get(0);
-            Account destinationAccount = getListOfAccountsFromRs(destinationRs).get(0);
+    private interface TransactionWork<T> {
+        T run(PooledConnection conn) throws SQLException;
+    }
 
-            BigDecimal newSourceBalance = BigDecimal.valueOf(sourceAccount.getBalance()).
-                    subtract(BigDecimal.valueOf(amount));
+    /**
+     * Runs the work in a BEGIN IMMEDIATE transaction on a pooled connection and commits it, unless the work rolled
+     * back itself. The whole transaction is retried when SQLite reports the database as busy or locked.
+     */
+    private <T> T inWriteTransaction(TransactionWork<T> work) throws SQLException {
+        int attempt = 1;
+        while (true) {
+            try (PooledConnection conn = connectionPool.borrow()) {
+                conn.beginImmediate();
+                T result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException e) {
+                if (!isBusyOrLocked(e) || attempt >= settings.getTransferMaxAttempts()) {
+                    throw e;
+                }
+                logger.warn("Transfer attempt {} hit a locked DB, retrying. {}", attempt, e.getMessage());
+                backOff(attempt++);
+            }
+        }
+    }
 
-            if (newSourceBalance.signum() >= 0) {
-                logger.info("Balance is sufficient. Processing transaction.");
+    /**
+     * Applies a transfer on a connection with an open transaction. Nothing is written when a check fails, so the
+     * caller can commit whatever the outcome.
+     */
+    private String applyTransfer(PooledConnection conn, Transfer transactionDetails, long transactionId)
+            throws SQLException {
+        String idempotencyKey = transactionDetails.getIdempotencyKey();
+        if (idempotencyKey != null) {
+            // checked under the write lock, so of two concurrent retries only the first can get past here
+            conn.prepare(SqlStatement.IDEMPOTENCY_KEY_RETRIEVAL).setString(1, idempotencyKey);
+            try (ResultSet rs = conn.executeQuery(SqlStatement.IDEMPOTENCY_KEY_RETRIEVAL)) {
+                if (rs.next()) {
+                    if (!isSameTransfer(rs, transactionDetails)) {
+                        throw new IdempotencyKeyReusedException(idempotencyKey);
+                    }
+                    transactionDetails.setId(rs.getLong("transactionId"));
+                    return TransferMessages.successful(rs.getLong("transactionId"));
+                }
+            }
+        }
 
-                String transactionTime = transactionDetails.getCreatedAt();
+        long[] settled = new long[2];
+        String failure = applyBalanceUpdates(conn, transactionDetails, settled);
+        if (failure != null) {
+            return failure;
+        }
 
-                updateAccountDetailsInDb(sourceAccountId, newSourceBalance);
+        PreparedStatement transactionHistoryStatement = conn.prepare(SqlStatement.UPDATE_TRANSACTION_HISTORY_QUERY);
+        bindTransactionsHistoryEntry(transactionHistoryStatement, transactionDetails, transactionId, settled);
+        conn.executeUpdate(SqlStatement.UPDATE_TRANSACTION_HISTORY_QUERY);
 
-                BigDecimal newDestinationBalance = BigDecimal.valueOf(destinationAccount.getBalance()).
-                        add(BigDecimal.valueOf(amount));
+        transactionDetails.setId(transactionId);
+        return TransferMessages.successful(transactionId);
+    }
 
-                updateAccountDetailsInDb(destinationAccountId, newDestinationBalance);
+    /**
+     * Checks both accounts and moves the amount between them, converted from the transfer's currency into each
+     * account's with the exchange rates in memory. A transfer without a currency is taken to be in the source
+     * account's, and recorded so. On success settled holds the debit and the credit, each in minor units of its
+     * account's currency.
+     *
+     * @return null if the balances were updated, otherwise the failure message; nothing is written on failure
+     */
+    private String applyBalanceUpdates(PooledConnection conn, Transfer transactionDetails, long[] settled)
+            throws SQLException {
+        long sourceAccountId = transactionDetails.getSourceAccountId();
+        long destinationAccountId = transactionDetails.getDestinationAccountId();
+        Money amount = transactionDetails.getAmount();
 
-                long transactionId = getTransactionId();
+        List<Account> sourceAccounts = getListOfAccountsFromRs(getAccountResultSetFromDb(conn, sourceAccountId));
+        List<Account> destinationAccounts =
+                getListOfAccountsFromRs(getAccountResultSetFromDb(conn, destinationAccountId));
 
-                updateTransactionsHistoryDb(sourceAccountId, destinationAccountId, amount, transactionTime,
-                        transactionId, transactionDetails.getCurrency());
+        boolean sourceAccExists = !sourceAccounts.isEmpty();
+        boolean destinationAccExists = !destinationAccounts.isEmpty();
+        boolean sourceDestinationAccountExist = sourceAccExists && destinationAccExists;
+        boolean sourceAndDestinationDiffer = sourceAccountId != destinationAccountId;
 
-                logger.info("Transaction ID [" + transactionId + "]" + " complete.");
-                return "Transaction successful. Transaction ID [" + transactionId + "]";
-            } else {
-                logger.error("insufficient source balance.");
-                return "The source balance is insufficient for this transaction";
-            }
-        } else {
-            logger.info("Transaction failed retrieving error message");
-            return getAccountErrorString(sourceAccountId, destinationAccountId, sourceAccExists,
+        if (!sourceDestinationAccountExist || !sourceAndDestinationDiffer) {
+            return TransferMessages.accountError(sourceAccountId, destinationAccountId, sourceAccExists,
                     destinationAccExists, sourceAndDestinationDiffer);
         }
+
+        Account sourceAccount = sourceAccounts.get(0);
+        Account destinationAccount = destinationAccounts.get(0);
+
+        // one snapshot for both legs, so a rate reload in between cannot mix two sets of rates
+        FxRates rates = exchangeRates.current();
+        if (transactionDetails.getCurrency() == null) {
+            transactionDetails.setCurrency(sourceAccount.getCurrency());
+        }
+        String currency = transactionDetails.getCurrency();
+        FxRates.Rate toSource = rates.find(currency, sourceAccount.getCurrency());
+        FxRates.Rate toDestination = rates.find(currency, destinationAccount.getCurrency());
+        if (toSource == null || toDestination == null) {
+            return TransferMessages.noExchangeRate(currency,
+                    toSource == null ? sourceAccount.getCurrency() : destinationAccount.getCurrency());
+        }
+
+        // balances are in minor units of each account's currency, the amount also has to be exact in the
+        // transfer's own currency for the ledger
+        long debit;
+        long credit;
+        long newDestinationBalance;
+        try {
+            debit = toSource.convert(amount, Money.exponentOf(sourceAccount.getCurrency()));
+            credit = toDestination.convert(amount, Money.exponentOf(destinationAccount.getCurrency()));
+            newDestinationBalance = Math.addExact(destinationAccount.getBalance().getMinorUnits(), credit);
+            amount.toMinorUnits(Money.exponentOf(currency));
+        } catch (ArithmeticException e) {
+            return TransferMessages.invalidAmount(amount, currency);
+        }
+
+        long newSourceBalance = sourceAccount.getBalance().getMinorUnits() - debit;
+        if (newSourceBalance < 0 || !debitAccountInDb(conn, sourceAccountId, newSourceBalance, debit)) {
+            return TransferMessages.insufficientBalance();
+        }
+
+        updateAccountDetailsInDb(conn, destinationAccountId, newDestinationBalance);
+        settled[0] = debit;
+        settled[1] = credit;
+        return null;
+    }
+
+    static boolean isBusyOrLocked(SQLException e) {
+        int primaryResultCode = getPrimaryResultCode(e);
+        return primaryResultCode == SQLITE_BUSY || primaryResultCode == SQLITE_LOCKED;
+    }
+
+    private static int getPrimaryResultCode(SQLException e) {
+        return e.getErrorCode() & 0xff;
     }
 
-    private String getAccountErrorString(long sourceAccountId, long destinationAccountId,
-                                         boolean sourceAccExists, boolean destinationAccExists,
-                                         boolean sourceAndDestinationDiffer) {
-        if (!sourceAndDestinationDiffer) {
-            return "Account ID's " + destinationAccountId + " and " + sourceAccountId + " are the same. " +
-                    "Please correct either the source or destination account";
-        } else if (sourceAccExists) {
-            return "Account ID " + destinationAccountId + " not found. Please review the destination account ID.";
-        } else if (destinationAccExists) {
-            return "Account ID " + sourceAccountId + " not found. Please review the source account ID.";
-        } else {
-            return "Account ID's " + destinationAccountId + " and " + sourceAccountId + " not found. Please verify" +
-                    " both account ID's";
+    private void backOff(int attempt) throws SQLException {
+        try {
+            Thread.sleep(settings.getTransferRetryBackoffMillis() * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying transfer", e);
         }
     }
 
+    @Override
+    public void addReadRefreshListener(Runnable listener) {
+        readReplica.addRefreshListener(listener);
+    }
+
+    /**
+     * Drops the table and creates it again with its indexes, which is instant however many rows it held, unlike
+     * a DELETE that writes every row to the WAL. Any archive run is stopped first, it deletes by ledger rowid.
+     */
+    @Override
     public String clearTables(String tableName) {
-        logger.info("Attempting to delete " + tableName);
+        logger.info("Attempting to delete {}", tableName);
         try {
             if (tableName.equalsIgnoreCase("accounts")) {
-                executeUnitStatement("DELETE FROM accounts");
+                archiver.whileStopped(() -> {
+                    recreateTable("accounts");
+                    reconciler.rebaseline();
+                    return null;
+                });
                 return "Accounts table cleared";
             } else if (tableName.equalsIgnoreCase("transactions")) {
-                executeUnitStatement("DELETE FROM transactions");
+                archiver.whileStopped(() -> {
+                    recreateTable("transactions");
+                    transactionIdGenerator.reset();
+                    reconciler.rebaseline();
+                    return null;
+                });
                 return "Transactions table cleared";
             } else {
                 return "Invalid table name. Table name either [transactions] or [accounts]";
             }
         } catch (SQLException e) {
-            logger.error("clearTable failed with exception " + e.getMessage());
+            logger.error("clearTable failed with exception {}", e.getMessage());
             return "Failed to clear table " + e.getMessage();
         }
     }
 
-    private void updateTransactionsHistoryDb(long sourceAccountId, long destinationAccountId, double amount,
-                                             String transactionTime, long transactionId, String currency)
-                                             throws IOException, SQLException {
-        final String transactionUpdateQueryFile = "src/main/resources/sql/UpdateTransactionHistoryQuery.sql";
-        String transactionsHistoryUpdateQuery = getQueryFromFile(transactionUpdateQueryFile);
-        logger.info("Updating the transactions history table");
-        PreparedStatement transactionHistoryStatement = connection.prepareStatement(transactionsHistoryUpdateQuery);
+    /**
+     * Replays the table's own CREATE statements from sqlite_master after dropping it, all in one transaction, so
+     * the table is never seen missing. Clearing transactions restarts the ID sequence in the same transaction.
+     */
+    private Void recreateTable(String tableName) throws SQLException {
+        return inWriteTransaction(conn -> {
+            List<String> schema = new ArrayList<>();
+            conn.prepare(SqlStatement.TABLE_SCHEMA_RETRIEVAL).setString(1, tableName);
+            try (ResultSet rs = conn.executeQuery(SqlStatement.TABLE_SCHEMA_RETRIEVAL)) {
+                while (rs.next()) {
+                    schema.add(rs.getString("sql"));
+                }
+            }
+            try (Statement statement = conn.getConnection().createStatement()) {
+                statement.execute("DROP TABLE " + tableName);
+                for (String create : schema) {
+                    statement.execute(create);
+                }
+            }
+            if (tableName.equals("transactions")) {
+                PreparedStatement sequenceStatement = conn.prepare(SqlStatement.SEQUENCE_UPDATE);
+                sequenceStatement.setLong(1, 1);
+                sequenceStatement.setString(2, "transactions");
+                conn.executeUpdate(SqlStatement.SEQUENCE_UPDATE);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Whether the ledger row is the one the transfer would have written. A transfer without a currency was made in
+     * the source account's currency.
+     */
+    private static boolean isSameTransfer(ResultSet ledgerRow, Transfer transfer) throws SQLException {
+        String rowCurrency = ledgerRow.getString("currency");
+        String currency = transfer.getCurrency() != null ? transfer.getCurrency()
+                : ledgerRow.getString("sourceCurrency");
+        return ledgerRow.getLong("sourceId") == transfer.getSourceAccountId()
+                && ledgerRow.getLong("destinationId") == transfer.getDestinationAccountId()
+                && (rowCurrency == null ? currency == null : rowCurrency.equalsIgnoreCase(currency))
+                && Money.ofMinorUnits(ledgerRow.getLong("amount"), Money.exponentOf(rowCurrency))
+                        .equals(transfer.getAmount());
+    }
+
+    private void bindTransactionsHistoryEntry(PreparedStatement transactionHistoryStatement,
+                                              Transfer transactionDetails, long transactionId, long[] settled)
+            throws SQLException {
         transactionHistoryStatement.setLong(1, transactionId);
-        transactionHistoryStatement.setDouble(2, amount);
+        transactionHistoryStatement.setLong(2,
+                transactionDetails.getAmount().toMinorUnits(Money.exponentOf(transactionDetails.getCurrency())));
         String TRANSFER = "transfer";
         transactionHistoryStatement.setString(3, TRANSFER);
-        transactionHistoryStatement.setLong(4, sourceAccountId);
-        transactionHistoryStatement.setLong(5, destinationAccountId);
-        transactionHistoryStatement.setString(6, currency);
-        transactionHistoryStatement.setString(7, transactionTime);
-        transactionHistoryStatement.execute();
-        transactionHistoryStatement.close();
-    }
-
-    private void updateAccountDetailsInDb(long sourceAccountId, BigDecimal newSourceBalance) throws SQLException, IOException {
-        final String accountUpdateQueryFile = "src/main/resources/sql/UpdateAccountEntry.sql";
-        String accountUpdateQuery = getQueryFromFile(accountUpdateQueryFile);
-        PreparedStatement sourceUpdateStatement = connection.prepareStatement(accountUpdateQuery);
-        sourceUpdateStatement.setBigDecimal(1, newSourceBalance);
+        transactionHistoryStatement.setLong(4, transactionDetails.getSourceAccountId());
+        transactionHistoryStatement.setLong(5, transactionDetails.getDestinationAccountId());
+        transactionHistoryStatement.setString(6, transactionDetails.getCurrency());
+        transactionHistoryStatement.setLong(7, transactionDetails.getCreatedAt());
+        transactionHistoryStatement.setLong(8, settled[0]);
+        transactionHistoryStatement.setLong(9, settled[1]);
+        transactionHistoryStatement.setString(10, transactionDetails.getIdempotencyKey());
+    }
+
+    /**
+     * Writes the debited balance only if the stored balance still covers the amount. Returns false when no row
+     * was updated, i.e. the funds are no longer there.
+     */
+    private boolean debitAccountInDb(PooledConnection conn, long sourceAccountId, long newSourceBalance,
+                                     long debit) throws SQLException {
+        PreparedStatement debitStatement = conn.prepare(SqlStatement.DEBIT_ACCOUNT_ENTRY);
+        debitStatement.setLong(1, newSourceBalance);
+        debitStatement.setLong(2, sourceAccountId);
+        debitStatement.setLong(3, debit);
+        return conn.executeUpdate(SqlStatement.DEBIT_ACCOUNT_ENTRY) == 1;
+    }
+
+    private void updateAccountDetailsInDb(PooledConnection conn, long sourceAccountId, long newSourceBalance)
+            throws SQLException {
+        PreparedStatement sourceUpdateStatement = conn.prepare(SqlStatement.UPDATE_ACCOUNT_ENTRY);
+        sourceUpdateStatement.setLong(1, newSourceBalance);
         sourceUpdateStatement.setLong(2, sourceAccountId);
-        sourceUpdateStatement.execute();
-        sourceUpdateStatement.close();
+        conn.executeUpdate(SqlStatement.UPDATE_ACCOUNT_ENTRY);
     }
 
-    public boolean isAccountExists(long id) throws SQLException, IOException {
-        final String tableCountQueryFile = "src/main/resources/sql/TableCountQuery.sql";
-        String query = getQueryFromFile(tableCountQueryFile) + "'" + id + "'";
-        return getRowCount(query) == 1;
+    public boolean isAccountExists(long id) throws SQLException {
+        try (PooledConnection conn = connectionPool.borrow()) {
+            PreparedStatement accountCountStatement = conn.prepare(SqlStatement.TABLE_COUNT_QUERY);
+            accountCountStatement.setLong(1, id);
+            try (ResultSet rs = conn.executeQuery(SqlStatement.TABLE_COUNT_QUERY)) {
+                rs.next();
+                return rs.getLong("rowcount") == 1;
+            }
+        }
     }
 
     private List<Account> getListOfAccountsFromRs(ResultSet rs) throws SQLException {
@@ -199,70 +711,54 @@ public class DatabaseOperations {
         while (rs.next()) {
             Account account = new Account();
             account.setId(rs.getLong("id"));
-            account.setBalance(rs.getDouble("balance"));
-            account.setCurrency(rs.getString("currency"));
-            account.setCreatedAt(rs.getString("createdAt"));
+            String currency = rs.getString("currency");
+            account.setBalance(Money.ofMinorUnits(rs.getLong("balance"), Money.exponentOf(currency)));
+            account.setCurrency(currency);
+            account.setCreatedAt(rs.getLong("createdAt"));
             accounts.add(account);
         }
         rs.close();
         return accounts;
     }
 
-    public long getTransactionId() throws IOException, SQLException {
-        final String transactionHistoryCountQueryFile = "src/main/resources/sql/TransactionHistoryCountQuery.sql";
-        String transactionIdQuery = getQueryFromFile(transactionHistoryCountQueryFile);
-        return getRowCount(transactionIdQuery) + 1;
+    public long getTransactionId() throws SQLException {
+        return transactionIdGenerator.nextId();
     }
 
-    public long getRowCount(String query) throws SQLException {
-        ResultSet rs = executeStatement(query);
-        rs.next();
-        String ROWCOUNT = "rowcount";
-        long rowCount = rs.getLong(ROWCOUNT);
-        rs.close();
-        return rowCount;
-    }
-
-    private ResultSet getAccountResultSetFromDb(long id) throws IOException, SQLException {
-        final String accountRetrievalQueryFile = "src/main/resources/sql/AccountRetrieval.sql";
-        String accountRetrievalQuery = getQueryFromFile(accountRetrievalQueryFile);
-        PreparedStatement accountRetrievalStatement = createPreparedStatement(accountRetrievalQuery);
+    private ResultSet getAccountResultSetFromDb(PooledConnection conn, long id) throws SQLException {
+        PreparedStatement accountRetrievalStatement = conn.prepare(SqlStatement.ACCOUNT_RETRIEVAL);
         accountRetrievalStatement.setLong(1, id);
-        return accountRetrievalStatement.executeQuery();
+        return conn.executeQuery(SqlStatement.ACCOUNT_RETRIEVAL);
     }
 
-    private void executeAccountEntryStatement(Account account) throws SQLException, IOException {
-        final String accountEntryCreationFile = "src/main/resources/sql/AddAccountEntry.sql";
-        String accountEntryQuery = getQueryFromFile(accountEntryCreationFile);
-        PreparedStatement accEntryStatement = createPreparedStatement(accountEntryQuery);
+    private void executeAccountEntryStatement(PooledConnection conn, Account account, long balance)
+            throws SQLException {
+        PreparedStatement accEntryStatement = conn.prepare(SqlStatement.ADD_ACCOUNT_ENTRY);
         accEntryStatement.setLong(1, account.getId());
-        accEntryStatement.setDouble(2, account.getBalance());
+        accEntryStatement.setLong(2, balance);
         accEntryStatement.setString(3, account.getCurrency());
-        accEntryStatement.setString(4, LocalDateTime.now().format(dbTimeStampFormat));
-        accEntryStatement.execute();
-        accEntryStatement.close();
-    }
-
-    public PreparedStatement createPreparedStatement(String query) throws SQLException {
-        return connection.prepareStatement(query);
-    }
-
-    public void executeUnitStatement(String query) throws SQLException {
-        Statement statement = connection.createStatement();
-        statement.execute(query);
-        statement.close();
-    }
-
-    public ResultSet executeStatement(String query) throws SQLException {
-        Statement statement = connection.createStatement();
-        return statement.executeQuery(query);
+        accEntryStatement.setLong(4, Timestamps.now());
+        accEntryStatement.setLong(5, balance);
+        conn.executeUpdate(SqlStatement.ADD_ACCOUNT_ENTRY);
     }
 
-    public String getQueryFromFile(String fileUri) throws IOException {
-        return Files.readString(new File(fileUri).toPath());
-    }
-
-    public void setConnection(String dbUrl) throws SQLException {
-        connection = DriverManager.getConnection(dbUrl);
+    @Override
+    public void close() throws SQLException {
+        logger.info("Closing the 10X bank DB connections");
+        if (archiver != null) {
+            archiver.close();
+        }
+        if (readReplica != null) {
+            readReplica.close();
+        }
+        if (reconciler != null) {
+            reconciler.close();
+        }
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
     }
 }
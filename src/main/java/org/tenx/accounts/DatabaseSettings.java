@@ -0,0 +1,289 @@
+package org.tenx.accounts;
+
+import org.sqlite.SQLiteConfig;
+
+import java.util.Properties;
+
+/**
+ * Connection settings for the SQLite backend. Defaults match the application.properties shipped with the app,
+ * so tests can build a {@link DatabaseOperations} from just a JDBC url.
+ */
+public class DatabaseSettings {
+    private String url = "jdbc:sqlite:10xBank";
+    private int poolSize = 4;
+    private int readPoolSize = 4;
+    private long readSnapshotRefreshMillis = 0;
+    private String readSnapshotDirectory = "snapshots";
+    private long poolTimeoutMillis = 5000;
+    private String journalMode = "WAL";
+    private int busyTimeoutMillis = 5000;
+    private int transferMaxAttempts = 5;
+    private long transferRetryBackoffMillis = 10;
+    private String transactionIdGenerator = "sequence";
+    private int transactionIdBlockSize = 1000;
+    private long nodeId = 0;
+    private boolean groupCommitEnabled = false;
+    private int groupCommitMaxBatch = 64;
+    private long groupCommitMaxLingerMillis = 2;
+    private long groupCommitWaitTimeoutMillis = 30000;
+    private int batchChunkSize = 500;
+    private int fetchSize = 500;
+    private int importBatchSize = 10000;
+    private boolean reconciliationEnabled = true;
+    private long reconciliationIntervalMillis = 10000;
+    private int reconciliationChunkSize = 2000;
+    private String archiveDirectory = "archive";
+    private int archiveChunkSize = 1000;
+    private long archivePauseMillis = 20;
+    private int archiveRetentionDays = 0;
+    private long archiveIntervalMillis = 3600000;
+
+    public DatabaseSettings() {
+    }
+
+    public DatabaseSettings(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getReadPoolSize() {
+        return readPoolSize;
+    }
+
+    public void setReadPoolSize(int readPoolSize) {
+        this.readPoolSize = readPoolSize;
+    }
+
+    public long getReadSnapshotRefreshMillis() {
+        return readSnapshotRefreshMillis;
+    }
+
+    public void setReadSnapshotRefreshMillis(long readSnapshotRefreshMillis) {
+        this.readSnapshotRefreshMillis = readSnapshotRefreshMillis;
+    }
+
+    public String getReadSnapshotDirectory() {
+        return readSnapshotDirectory;
+    }
+
+    public void setReadSnapshotDirectory(String readSnapshotDirectory) {
+        this.readSnapshotDirectory = readSnapshotDirectory;
+    }
+
+    public long getPoolTimeoutMillis() {
+        return poolTimeoutMillis;
+    }
+
+    public void setPoolTimeoutMillis(long poolTimeoutMillis) {
+        this.poolTimeoutMillis = poolTimeoutMillis;
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    public void setJournalMode(String journalMode) {
+        this.journalMode = journalMode;
+    }
+
+    public int getBusyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+
+    public void setBusyTimeoutMillis(int busyTimeoutMillis) {
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    public int getTransferMaxAttempts() {
+        return transferMaxAttempts;
+    }
+
+    public void setTransferMaxAttempts(int transferMaxAttempts) {
+        this.transferMaxAttempts = transferMaxAttempts;
+    }
+
+    public long getTransferRetryBackoffMillis() {
+        return transferRetryBackoffMillis;
+    }
+
+    public void setTransferRetryBackoffMillis(long transferRetryBackoffMillis) {
+        this.transferRetryBackoffMillis = transferRetryBackoffMillis;
+    }
+
+    public String getTransactionIdGenerator() {
+        return transactionIdGenerator;
+    }
+
+    public void setTransactionIdGenerator(String transactionIdGenerator) {
+        this.transactionIdGenerator = transactionIdGenerator;
+    }
+
+    public int getTransactionIdBlockSize() {
+        return transactionIdBlockSize;
+    }
+
+    public void setTransactionIdBlockSize(int transactionIdBlockSize) {
+        this.transactionIdBlockSize = transactionIdBlockSize;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return groupCommitEnabled;
+    }
+
+    public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
+
+    public int getGroupCommitMaxBatch() {
+        return groupCommitMaxBatch;
+    }
+
+    public void setGroupCommitMaxBatch(int groupCommitMaxBatch) {
+        this.groupCommitMaxBatch = groupCommitMaxBatch;
+    }
+
+    public long getGroupCommitMaxLingerMillis() {
+        return groupCommitMaxLingerMillis;
+    }
+
+    public void setGroupCommitMaxLingerMillis(long groupCommitMaxLingerMillis) {
+        this.groupCommitMaxLingerMillis = groupCommitMaxLingerMillis;
+    }
+
+    public long getGroupCommitWaitTimeoutMillis() {
+        return groupCommitWaitTimeoutMillis;
+    }
+
+    public void setGroupCommitWaitTimeoutMillis(long groupCommitWaitTimeoutMillis) {
+        this.groupCommitWaitTimeoutMillis = groupCommitWaitTimeoutMillis;
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public void setBatchChunkSize(int batchChunkSize) {
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getImportBatchSize() {
+        return importBatchSize;
+    }
+
+    public void setImportBatchSize(int importBatchSize) {
+        this.importBatchSize = importBatchSize;
+    }
+
+    public boolean isReconciliationEnabled() {
+        return reconciliationEnabled;
+    }
+
+    public void setReconciliationEnabled(boolean reconciliationEnabled) {
+        this.reconciliationEnabled = reconciliationEnabled;
+    }
+
+    public long getReconciliationIntervalMillis() {
+        return reconciliationIntervalMillis;
+    }
+
+    public void setReconciliationIntervalMillis(long reconciliationIntervalMillis) {
+        this.reconciliationIntervalMillis = reconciliationIntervalMillis;
+    }
+
+    public int getReconciliationChunkSize() {
+        return reconciliationChunkSize;
+    }
+
+    public void setReconciliationChunkSize(int reconciliationChunkSize) {
+        this.reconciliationChunkSize = reconciliationChunkSize;
+    }
+
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    public void setArchiveDirectory(String archiveDirectory) {
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    public int getArchiveChunkSize() {
+        return archiveChunkSize;
+    }
+
+    public void setArchiveChunkSize(int archiveChunkSize) {
+        this.archiveChunkSize = archiveChunkSize;
+    }
+
+    public long getArchivePauseMillis() {
+        return archivePauseMillis;
+    }
+
+    public void setArchivePauseMillis(long archivePauseMillis) {
+        this.archivePauseMillis = archivePauseMillis;
+    }
+
+    public int getArchiveRetentionDays() {
+        return archiveRetentionDays;
+    }
+
+    public void setArchiveRetentionDays(int archiveRetentionDays) {
+        this.archiveRetentionDays = archiveRetentionDays;
+    }
+
+    public long getArchiveIntervalMillis() {
+        return archiveIntervalMillis;
+    }
+
+    public void setArchiveIntervalMillis(long archiveIntervalMillis) {
+        this.archiveIntervalMillis = archiveIntervalMillis;
+    }
+
+    public Properties toConnectionProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.valueOf(journalMode.toUpperCase()));
+        config.setBusyTimeout(busyTimeoutMillis);
+        return config.toProperties();
+    }
+
+    /**
+     * Leaves the journal mode alone, a read-only connection cannot change it. The writer sets it for the live DB
+     * and a snapshot has no journal to speak of.
+     */
+    public Properties toReadOnlyConnectionProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(busyTimeoutMillis);
+        return config.toProperties();
+    }
+}
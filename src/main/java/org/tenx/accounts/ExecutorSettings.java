@@ -0,0 +1,34 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for the {@link StoreExecutor}, bound from {@code tenx.executor.*}.
+ */
+public class ExecutorSettings {
+    private boolean enabled = true;
+    private int threads = 8;
+    private int queueCapacity = 512;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
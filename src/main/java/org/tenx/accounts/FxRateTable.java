@@ -0,0 +1,74 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The exchange rates transfers convert with, loaded from a local file and held in memory. The rates in use are
+ * one immutable {@link FxRates} snapshot; a reload parses the whole file first and then swaps the new snapshot
+ * in atomically, so a transfer that took the snapshot sees one consistent set of rates for both of its legs and
+ * no transfer ever waits on a reload.
+ */
+public class FxRateTable {
+    private final Logger logger = LoggerFactory.getLogger(FxRateTable.class);
+
+    private final Path path;
+    private final AtomicReference<FxRates> current = new AtomicReference<>(FxRates.EMPTY);
+
+    /**
+     * Loads the rates file if there is one. Without it only transfers that need no conversion succeed.
+     *
+     * @throws IllegalArgumentException if the file has an invalid line
+     */
+    public FxRateTable(FxSettings settings) throws IOException {
+        this.path = Paths.get(settings.getRatesPath());
+        if (Files.exists(path)) {
+            reload();
+        } else {
+            logger.info("No exchange rates file at {}, transfers between currencies are refused", path);
+        }
+    }
+
+    private FxRateTable(FxRates rates) {
+        this.path = null;
+        current.set(rates);
+    }
+
+    /**
+     * A table that is never reloaded, for tests and tools.
+     */
+    public static FxRateTable of(FxRates rates) {
+        return new FxRateTable(rates);
+    }
+
+    public FxRates current() {
+        return current.get();
+    }
+
+    /**
+     * Re-reads the rates file. The rates in use only change if the whole file is valid.
+     *
+     * @return the number of currency pairs now in use, counting each direction
+     * @throws IllegalArgumentException if the file has an invalid line
+     */
+    public int reload() throws IOException {
+        if (path == null) {
+            throw new IllegalStateException("These exchange rates are not backed by a file");
+        }
+        FxRates rates;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            rates = FxRates.parse(reader);
+        }
+        current.set(rates);
+        logger.info("Loaded {} exchange rates from {}", rates.size(), path);
+        return rates.size();
+    }
+}
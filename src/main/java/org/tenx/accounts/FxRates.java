@@ -0,0 +1,169 @@
+package org.tenx.accounts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One immutable set of exchange rates, see {@link FxRateTable} for how a new set replaces the current one.
+ * Rates are held in fixed point, an unscaled long and a decimal scale, so converting an amount is a long
+ * multiplication and a rounding division with no {@link BigDecimal} unless the product would overflow.
+ *
+ * Read from text with one {@code FROM,TO,RATE} line per pair, e.g. {@code GBP,USD,1.2710}, meaning one unit of
+ * FROM buys RATE units of TO. Blank lines and lines starting with {@code #} are skipped. A pair given in one
+ * direction only is also used in the other with the inverse rate.
+ */
+public final class FxRates {
+    public static final FxRates EMPTY = new FxRates(Map.of());
+
+    /** Decimal places kept for a rate, including inverses derived from the other direction. */
+    static final int MAX_RATE_SCALE = 12;
+    private static final int MAX_LONG_POWER_OF_TEN = 18;
+
+    private final Map<String, Map<String, Rate>> rates;
+
+    private FxRates(Map<String, Map<String, Rate>> rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * @return the rate converting from one currency to the other, {@link Rate#IDENTITY} when they are the same, or
+     * null if the pair has no rate. A missing currency is only the same as another missing one
+     */
+    public Rate find(String fromCurrency, String toCurrency) {
+        if (fromCurrency == null || toCurrency == null) {
+            return fromCurrency == toCurrency ? Rate.IDENTITY : null;
+        }
+        if (fromCurrency.equalsIgnoreCase(toCurrency)) {
+            return Rate.IDENTITY;
+        }
+        Map<String, Rate> fromRates = rates.get(fromCurrency.toUpperCase());
+        return fromRates == null ? null : fromRates.get(toCurrency.toUpperCase());
+    }
+
+    /**
+     * @return the number of currency pairs, counting each direction
+     */
+    public int size() {
+        return rates.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a line is not a valid {@code FROM,TO,RATE}
+     */
+    public static FxRates parse(Reader reader) throws IOException {
+        Map<String, Map<String, Rate>> given = new HashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not FROM,TO,RATE: " + line);
+            }
+            String from = fields[0].trim().toUpperCase();
+            String to = fields[1].trim().toUpperCase();
+            BigDecimal rate;
+            try {
+                rate = new BigDecimal(fields[2].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has an invalid rate: " + line);
+            }
+            if (rate.signum() <= 0 || from.equals(to)) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not a rate between two currencies: "
+                        + line);
+            }
+            given.computeIfAbsent(from, currency -> new HashMap<>()).put(to, Rate.of(rate));
+        }
+
+        Map<String, Map<String, Rate>> all = new HashMap<>();
+        given.forEach((from, toRates) -> toRates.forEach((to, rate) -> {
+            all.computeIfAbsent(from, currency -> new HashMap<>()).put(to, rate);
+            all.computeIfAbsent(to, currency -> new HashMap<>()).putIfAbsent(from, rate.inverse());
+        }));
+        all.replaceAll((from, toRates) -> Map.copyOf(toRates));
+        return new FxRates(Map.copyOf(all));
+    }
+
+    public static final class Rate {
+        public static final Rate IDENTITY = new Rate(1, 0);
+
+        private final long unscaled;
+        private final int scale;
+
+        private Rate(long unscaled, int scale) {
+            this.unscaled = unscaled;
+            this.scale = scale;
+        }
+
+        static Rate of(BigDecimal rate) {
+            BigDecimal normalised = rate.setScale(Math.min(rate.scale(), MAX_RATE_SCALE), RoundingMode.HALF_EVEN)
+                    .stripTrailingZeros();
+            if (normalised.signum() <= 0) {
+                throw new IllegalArgumentException("Rate " + rate + " rounds to zero");
+            }
+            if (normalised.scale() < 0) {
+                normalised = normalised.setScale(0);
+            }
+            return new Rate(normalised.unscaledValue().longValueExact(), normalised.scale());
+        }
+
+        private Rate inverse() {
+            return of(BigDecimal.ONE.divide(toBigDecimal(), MAX_RATE_SCALE, RoundingMode.HALF_EVEN));
+        }
+
+        public BigDecimal toBigDecimal() {
+            return BigDecimal.valueOf(unscaled, scale);
+        }
+
+        /**
+         * Converts the amount into minor units of the given exponent, rounding half to even. The identity rate
+         * does not round: an amount finer than the exponent allows is an error, as for
+         * {@link Money#toMinorUnits(int)}.
+         *
+         * @throws ArithmeticException if the result does not fit in a long, or the identity rate cannot convert
+         * the amount exactly
+         */
+        public long convert(Money amount, int targetExponent) {
+            if (this == IDENTITY) {
+                return amount.toMinorUnits(targetExponent);
+            }
+            int productScale = amount.getExponent() + scale;
+            int shift = targetExponent - productScale;
+            if (Math.abs(shift) <= MAX_LONG_POWER_OF_TEN) {
+                try {
+                    long product = Math.multiplyExact(amount.getMinorUnits(), unscaled);
+                    return shift >= 0 ? Math.multiplyExact(product, Money.powerOfTen(shift))
+                            : divideHalfEven(product, Money.powerOfTen(-shift));
+                } catch (ArithmeticException overflow) {
+                    // retried below without the long range limit
+                }
+            }
+            return amount.toBigDecimal().multiply(toBigDecimal())
+                    .setScale(targetExponent, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+        }
+
+        private static long divideHalfEven(long dividend, long divisor) {
+            long quotient = dividend / divisor;
+            long twiceRemainder = Math.abs(dividend % divisor) * 2;
+            if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+                quotient += Long.signum(dividend);
+            }
+            return quotient;
+        }
+
+        @Override
+        public String toString() {
+            return toBigDecimal().toPlainString();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for the {@link FxRateTable}, bound from {@code tenx.fx.*}.
+ */
+public class FxSettings {
+    private String ratesPath = "fx-rates.csv";
+
+    public String getRatesPath() {
+        return ratesPath;
+    }
+
+    public void setRatesPath(String ratesPath) {
+        this.ratesPath = ratesPath;
+    }
+}
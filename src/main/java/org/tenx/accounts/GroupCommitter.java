@@ -0,0 +1,202 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Applies transfers in batches so that one durable commit covers many of them. Request threads enqueue their
+ * transfer and block until the batch containing it has been committed. A single writer thread takes the first
+ * waiting transfer, keeps collecting more for up to {@code groupCommitMaxLingerMillis} or until
+ * {@code groupCommitMaxBatch} are waiting, and then applies them all in one SQLite transaction.
+ *
+ * Each transfer runs inside its own savepoint, so one that fails with an exception is undone on its own and the
+ * rest of the batch still commits. If the commit itself fails, every transfer in the batch fails. Callers wait at
+ * most {@code groupCommitWaitTimeoutMillis} for their batch, so a stuck writer cannot hold request threads forever.
+ */
+public class GroupCommitter implements AutoCloseable {
+
+    /**
+     * Applies one transfer on a connection that already has a transaction open.
+     */
+    public interface TransferApplier {
+        String apply(PooledConnection conn, Transfer transfer, long transactionId) throws SQLException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+    private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+    private final ConnectionPool connectionPool;
+    private final TransferApplier applier;
+    private final DatabaseSettings settings;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public GroupCommitter(ConnectionPool connectionPool, DatabaseSettings settings, TransferApplier applier) {
+        this.connectionPool = connectionPool;
+        this.settings = settings;
+        this.applier = applier;
+        this.writer = new Thread(this::runWriter, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the transfer and waits until the batch it ends up in is durable.
+     */
+    public String submit(Transfer transfer, long transactionId) throws SQLException {
+        if (!running) {
+            throw new SQLException("Group commit writer is shut down");
+        }
+        PendingTransfer pending = new PendingTransfer(transfer, transactionId);
+        queue.add(pending);
+        // close() may have drained the queue between the check above and the add
+        if (!running && queue.remove(pending)) {
+            throw new SQLException("Group commit writer is shut down");
+        }
+        try {
+            return pending.result.get(settings.getGroupCommitWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new SQLException("Timed out waiting for the group commit writer, the transfer was not applied");
+            }
+            throw new SQLException("Timed out waiting for the group commit writer, the transfer may still commit");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the transfer to commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Transfer failed", e.getCause());
+        }
+    }
+
+    private void runWriter() {
+        List<PendingTransfer> batch = new ArrayList<>(settings.getGroupCommitMaxBatch());
+        while (running) {
+            try {
+                collectBatch(batch);
+                if (!batch.isEmpty()) {
+                    commitBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                failBatch(batch, new SQLException("Group commit writer is shut down"));
+                break;
+            } catch (Throwable e) {
+                logger.error("Group commit of {} transfers failed", batch.size(), e);
+                failBatch(batch, new SQLException("Group commit failed", e));
+            } finally {
+                batch.clear();
+            }
+        }
+        failAll(new SQLException("Group commit writer is shut down"));
+    }
+
+    private void collectBatch(List<PendingTransfer> batch) throws InterruptedException {
+        PendingTransfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getGroupCommitMaxLingerMillis());
+        while (batch.size() < settings.getGroupCommitMaxBatch()) {
+            if (queue.drainTo(batch, settings.getGroupCommitMaxBatch() - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingTransfer next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commitBatch(List<PendingTransfer> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            List<String> results = new ArrayList<>(batch.size());
+            List<SQLException> failures = new ArrayList<>(batch.size());
+            try (PooledConnection conn = connectionPool.borrow()) {
+                conn.beginImmediate();
+                for (PendingTransfer pending : batch) {
+                    conn.savepoint();
+                    try {
+                        results.add(applier.apply(conn, pending.transfer, pending.transactionId));
+                        failures.add(null);
+                        conn.releaseSavepoint();
+                    } catch (SQLException e) {
+                        conn.rollbackToSavepoint();
+                        results.add(null);
+                        failures.add(e);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                if (DatabaseOperations.isBusyOrLocked(e) && attempt < settings.getTransferMaxAttempts()) {
+                    logger.warn("Group commit attempt {} hit a locked DB, retrying. {}", attempt, e.getMessage());
+                    Thread.sleep(settings.getTransferRetryBackoffMillis() * attempt);
+                    continue;
+                }
+                logger.error("Group commit of {} transfers failed {}", batch.size(), e.getMessage());
+                failBatch(batch, e);
+                return;
+            }
+
+            logger.debug("Committed a batch of {} transfers", batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (failures.get(i) != null) {
+                    batch.get(i).result.completeExceptionally(failures.get(i));
+                } else {
+                    batch.get(i).result.complete(results.get(i));
+                }
+            }
+            return;
+        }
+    }
+
+    private static void failBatch(List<PendingTransfer> batch, SQLException e) {
+        batch.forEach(pending -> pending.result.completeExceptionally(e));
+    }
+
+    private void failAll(SQLException e) {
+        PendingTransfer pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failAll(new SQLException("Group commit writer is shut down"));
+    }
+
+    private static final class PendingTransfer {
+        private final Transfer transfer;
+        private final long transactionId;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private PendingTransfer(Transfer transfer, long transactionId) {
+            this.transfer = transfer;
+            this.transactionId = transactionId;
+        }
+    }
+}
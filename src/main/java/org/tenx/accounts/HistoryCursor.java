@@ -0,0 +1,46 @@
+package org.tenx.accounts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in an account's transaction history, the createdAt and transaction ID of the last entry of a page.
+ * The next page starts with the entry just older than it, so pages stay consistent while new transfers arrive.
+ * Clients get it as an opaque string.
+ */
+public final class HistoryCursor {
+    private final long createdAt;
+    private final long transactionId;
+
+    public HistoryCursor(long createdAt, long transactionId) {
+        this.createdAt = createdAt;
+        this.transactionId = transactionId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + ":" + transactionId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a cursor handed out by {@link #encode()}
+     */
+    public static HistoryCursor decode(String text) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(text), StandardCharsets.US_ASCII);
+            int separator = decoded.indexOf(':');
+            return new HistoryCursor(Long.parseLong(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor " + text);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded index of recent idempotency keys to the result of the transfer that first used them. Entries expire
+ * after a fixed time to live and, once the index is full, the oldest are evicted first. Each key is kept with a
+ * fingerprint of its transfer, so a key reused for a different transfer is refused rather than replayed.
+ *
+ * The result is held as a future that is in the index before the transfer starts, so a retry arriving while the
+ * first attempt is still running waits for that attempt instead of racing it. Lookups and claims are a single
+ * {@link ConcurrentHashMap} operation without locks; eviction order is kept in a separate queue and trimmed by
+ * the thread that inserts.
+ */
+public class IdempotencyIndex {
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final int maxKeys;
+    private final long ttlNanos;
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyIndex(IdempotencySettings settings) {
+        this.maxKeys = settings.getMaxKeys();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(settings.getTtlMillis());
+        this.entries = new ConcurrentHashMap<>(Math.min(maxKeys, 1 << 16));
+    }
+
+    /**
+     * Claims the key for a transfer about to run, whose result will complete the given future.
+     *
+     * @return null if the key is now the caller's, otherwise the result of the transfer that already holds it, or
+     * an {@link IdempotencyKeyReusedException} if that transfer has a different fingerprint
+     */
+    public CompletableFuture<String> claim(String key, String fingerprint, CompletableFuture<String> result) {
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, fingerprint, result, now + ttlNanos);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing != null && existing.expiresAtNanos - now > 0) {
+                if (!existing.fingerprint.equals(fingerprint)) {
+                    return CompletableFuture.failedFuture(new IdempotencyKeyReusedException(key));
+                }
+                replays.increment();
+                return existing.result;
+            }
+            if (existing == null || entries.replace(key, existing, entry)) {
+                insertionOrder.add(entry);
+                evict(now);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Gives up a claim whose transfer ended without a result, so a retry runs it again.
+     */
+    public void release(String key, CompletableFuture<String> result) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.result == result) {
+            entries.remove(key, entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (entries.size() > maxKeys || oldest.expiresAtNanos - now <= 0)) {
+            // another inserting thread may have polled the same entry first, then this one takes the next
+            Entry polled = insertionOrder.poll();
+            if (polled != null && entries.remove(polled.key, polled)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("tenx.idempotency.replays", this, IdempotencyIndex::getReplays)
+                .description("Transfers answered with the result of an earlier one with the same key")
+                .register(registry);
+        FunctionCounter.builder("tenx.idempotency.evictions", this, IdempotencyIndex::getEvictions)
+                .register(registry);
+        Gauge.builder("tenx.idempotency.keys", this, IdempotencyIndex::size).register(registry);
+    }
+
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String fingerprint;
+        private final CompletableFuture<String> result;
+        private final long expiresAtNanos;
+
+        private Entry(String key, String fingerprint, CompletableFuture<String> result, long expiresAtNanos) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.result = result;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
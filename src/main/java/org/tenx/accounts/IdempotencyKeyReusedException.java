@@ -0,0 +1,15 @@
+package org.tenx.accounts;
+
+import java.sql.SQLException;
+
+/**
+ * A transfer came with an Idempotency-Key that an earlier, different transfer already used. Nothing is applied
+ * or replayed; the controller answers it with 422.
+ */
+public class IdempotencyKeyReusedException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency-Key " + key + " was already used for a different transfer");
+    }
+}
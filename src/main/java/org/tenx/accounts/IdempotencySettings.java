@@ -0,0 +1,34 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for the {@link IdempotencyIndex}, bound from {@code tenx.idempotency.*}.
+ */
+public class IdempotencySettings {
+    private boolean enabled = true;
+    private int maxKeys = 100000;
+    private long ttlMillis = 86400000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+}
@@ -0,0 +1,174 @@
+package org.tenx.accounts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes transfers sent with an idempotency key safe to retry on any storage engine. The {@link IdempotencyIndex}
+ * answers a repeated key from memory without reaching the engine; an engine that keeps the key with the
+ * transaction, as the sqlite one does, also catches repeats the index has already evicted or never saw.
+ */
+public class IdempotentAccountStore implements AccountStore {
+    private final AccountStore delegate;
+    private final IdempotencyIndex index;
+
+    public IdempotentAccountStore(AccountStore delegate, IdempotencyIndex index) {
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    public IdempotencyIndex getIndex() {
+        return index;
+    }
+
+    public AccountStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getAccountDetails(long id) throws IOException, SQLException {
+        return delegate.getAccountDetails(id);
+    }
+
+    @Override
+    public String getAccountDetails() throws IOException, SQLException {
+        return delegate.getAccountDetails();
+    }
+
+    @Override
+    public String getAccountDetails(long afterId, int limit) throws IOException, SQLException {
+        return delegate.getAccountDetails(afterId, limit);
+    }
+
+    @Override
+    public void writeAccountDetails(OutputStream out) throws IOException, SQLException {
+        delegate.writeAccountDetails(out);
+    }
+
+    @Override
+    public String getTransactionHistory(long accountId, long from, long to, HistoryCursor after, int limit)
+            throws IOException, SQLException {
+        return delegate.getTransactionHistory(accountId, from, to, after, limit);
+    }
+
+    @Override
+    public String getTransaction(long transactionId) throws IOException, SQLException {
+        return delegate.getTransaction(transactionId);
+    }
+
+    @Override
+    public String createAccountEntry(Account account) throws IOException, SQLException {
+        return delegate.createAccountEntry(account);
+    }
+
+    @Override
+    public String importAccounts(AccountFormat.AccountReader accounts) throws IOException, SQLException {
+        return delegate.importAccounts(accounts);
+    }
+
+    @Override
+    public void exportAccounts(AccountFormat.AccountWriter out) throws IOException, SQLException {
+        delegate.exportAccounts(out);
+    }
+
+    /**
+     * Answers a transfer whose key is in the index with the result it already has, waiting for it if the first
+     * attempt is still running, and otherwise runs it and records its result under the key. A key already held by
+     * a transfer with other accounts, amount or currency fails with {@link IdempotencyKeyReusedException}.
+     */
+    @Override
+    public String handleTransaction(Transfer transactionDetails) throws IOException, SQLException {
+        String key = transactionDetails.getIdempotencyKey();
+        if (key == null) {
+            return delegate.handleTransaction(transactionDetails);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> original = index.claim(key, fingerprint(transactionDetails), result);
+        if (original != null) {
+            return awaitOriginal(original);
+        }
+        try {
+            String response = delegate.handleTransaction(transactionDetails);
+            result.complete(response);
+            return response;
+        } catch (IOException | SQLException | RuntimeException e) {
+            index.release(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * The parts of a transfer a retry has to repeat exactly, taken before the engine fills in a missing currency.
+     */
+    static String fingerprint(Transfer transfer) {
+        return transfer.getSourceAccountId() + ":" + transfer.getDestinationAccountId() + ":"
+                + transfer.getAmount().toBigDecimal().stripTrailingZeros().toPlainString() + ":"
+                + (transfer.getCurrency() == null ? "" : transfer.getCurrency().toUpperCase());
+    }
+
+    private static String awaitOriginal(CompletableFuture<String> original) throws IOException, SQLException {
+        try {
+            return original.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the original transfer", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("The original transfer failed", cause);
+        }
+    }
+
+    @Override
+    public List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing)
+            throws IOException, SQLException {
+        return delegate.handleTransactionBatch(transfers, allOrNothing);
+    }
+
+    @Override
+    public String getReconciliationReport() throws IOException {
+        return delegate.getReconciliationReport();
+    }
+
+    @Override
+    public String archiveTransactions(long before) {
+        return delegate.archiveTransactions(before);
+    }
+
+    @Override
+    public String getArchiveStatus() throws IOException {
+        return delegate.getArchiveStatus();
+    }
+
+    @Override
+    public void addReadRefreshListener(Runnable listener) {
+        delegate.addReadRefreshListener(listener);
+    }
+
+    @Override
+    public String clearTables(String tableName) {
+        try {
+            return delegate.clearTables(tableName);
+        } finally {
+            if (tableName.equalsIgnoreCase("transactions")) {
+                index.clear();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        delegate.close();
+    }
+}
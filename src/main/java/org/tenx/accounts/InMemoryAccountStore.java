@@ -0,0 +1,639 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Storage engine that keeps every account in memory. Accounts live in a {@link LongObjectHashMap} keyed by
+ * account ID with balances held as long minor units of the account's currency (pennies for GBP), so a transfer
+ * is two integer updates instead of several SQLite round trips.
+ *
+ * Transfers lock the stripes of both accounts, always the lower stripe index first so two opposite transfers
+ * cannot deadlock (both accounts may share a stripe, the locks are reentrant), and write the transfer to the
+ * {@link AccountJournal} before touching the balances. The map itself is guarded by a read/write lock which is
+ * only taken exclusively to add accounts or clear everything.
+ *
+ * With {@code tenx.memory.transfer-shards} set, balances are instead owned by {@link TransferShards}: a transfer
+ * between accounts of one shard runs on that shard's thread without locks. A transfer across shards is done in two
+ * steps, debited on the source shard and then handed to the destination shard, which credits it and journals it.
+ * Funds are briefly in neither account between the two steps, but every balance only moves on its own shard.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private final Logger logger = LoggerFactory.getLogger(InMemoryAccountStore.class);
+
+    private final LongObjectHashMap<AccountRecord> accounts;
+    private final ReentrantReadWriteLock accountsLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes;
+    private final TransferShards shards;
+    private final AtomicLong lastTransactionId = new AtomicLong();
+    private final AccountJournal journal;
+    private final FxRateTable exchangeRates;
+
+    public InMemoryAccountStore(InMemorySettings settings) throws IOException {
+        this(settings, FxRateTable.of(FxRates.EMPTY));
+    }
+
+    public InMemoryAccountStore(InMemorySettings settings, FxRateTable exchangeRates) throws IOException {
+        this.exchangeRates = exchangeRates;
+        logger.info("Initializing the in-memory 10X bank from journal {}", settings.getJournalPath());
+        accounts = new LongObjectHashMap<>(settings.getInitialCapacity());
+        stripes = new ReentrantLock[settings.getLockStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        shards = settings.getTransferShards() > 0 ? new TransferShards(settings.getTransferShards()) : null;
+        journal = new AccountJournal(Paths.get(settings.getJournalPath()), settings.isJournalSync());
+        journal.replay(new JournalReplayer());
+        logger.info("Recovered {} accounts, last transaction ID {}", accounts.size(), lastTransactionId.get());
+    }
+
+    @Override
+    public String getAccountDetails() throws IOException {
+        logger.debug("Retrieving all account details");
+        List<AccountRecord> records = new ArrayList<>();
+        accountsLock.readLock().lock();
+        try {
+            accounts.forEachValue(records::add);
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+        records.sort(Comparator.comparingLong(record -> record.id));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartArray();
+            for (AccountRecord record : records) {
+                record.writeJson(generator);
+            }
+            generator.writeEndArray();
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Picks the page with a bounded max-heap of the smallest IDs above afterId, so a page costs one pass over the
+     * map and O(limit) memory however many accounts there are.
+     */
+    @Override
+    public String getAccountDetails(long afterId, int limit) throws IOException {
+        logger.debug("Retrieving {} account details after {}", limit, afterId);
+        PriorityQueue<AccountRecord> page = new PriorityQueue<>(Math.max(1, limit),
+                Comparator.comparingLong((AccountRecord record) -> record.id).reversed());
+        accountsLock.readLock().lock();
+        try {
+            accounts.forEachValue(record -> {
+                if (record.id > afterId && limit > 0) {
+                    if (page.size() < limit) {
+                        page.add(record);
+                    } else if (record.id < page.peek().id) {
+                        page.poll();
+                        page.add(record);
+                    }
+                }
+            });
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+
+        AccountRecord[] ordered = page.toArray(new AccountRecord[0]);
+        Arrays.sort(ordered, Comparator.comparingLong(record -> record.id));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartArray();
+            for (AccountRecord record : ordered) {
+                record.writeJson(generator);
+            }
+            generator.writeEndArray();
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies and sorts the account IDs (8 bytes per account) under the read lock, then writes the accounts
+     * without holding it so a slow client cannot block account creation.
+     */
+    @Override
+    public void writeAccountDetails(OutputStream out) throws IOException {
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartArray();
+            for (long id : sortedAccountIds()) {
+                AccountRecord record = findAccount(id);
+                if (record != null) {
+                    record.writeJson(generator);
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private long[] sortedAccountIds() {
+        long[] ids;
+        accountsLock.readLock().lock();
+        try {
+            ids = new long[accounts.size()];
+            int[] next = {0};
+            accounts.forEachValue(record -> ids[next[0]++] = record.id);
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Override
+    public String getAccountDetails(long id) throws IOException {
+        logger.debug("Retrieving account details for {}", id);
+        AccountRecord record = findAccount(id);
+        if (record != null) {
+            return AccountJsonCodec.toJson(record.toAccount());
+        } else {
+            return "Error the account with ID " + id + " does not exist.";
+        }
+    }
+
+    @Override
+    public String createAccountEntry(Account account) throws IOException {
+        logger.debug("Creating account {}", account.getId());
+        long balance;
+        try {
+            balance = account.getBalance().toMinorUnits(Money.exponentOf(account.getCurrency()));
+        } catch (ArithmeticException e) {
+            return TransferMessages.invalidAmount(account.getBalance(), account.getCurrency());
+        }
+        AccountRecord record = new AccountRecord(account.getId(), balance, account.getCurrency(), Timestamps.now());
+
+        accountsLock.writeLock().lock();
+        try {
+            if (accounts.get(record.id) != null) {
+                return "Account " + account.getId() + " already exists.";
+            }
+            journal.appendAccountCreated(record.id, record.balance, record.currency, record.createdAt);
+            accounts.putIfAbsent(record.id, record);
+            return "Account " + account.getId() + " created successfully";
+        } finally {
+            accountsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads and checks the whole import before taking the write lock, so accounts are added in one step with one
+     * journal record. The import is held in memory meanwhile, no more than this engine keeps once it is applied.
+     */
+    @Override
+    public String importAccounts(AccountFormat.AccountReader reader) throws IOException {
+        List<Account> imported = new ArrayList<>();
+        LongObjectHashMap<Account> importedById = new LongObjectHashMap<>(1024);
+        long importedAt = Timestamps.now();
+        Account account;
+        while ((account = reader.next()) != null) {
+            long balance;
+            try {
+                balance = account.getBalance().toMinorUnits(Money.exponentOf(account.getCurrency()));
+            } catch (ArithmeticException e) {
+                return TransferMessages.importInvalidBalance(account.getId(), account.getBalance(),
+                        account.getCurrency());
+            }
+            account.setBalance(Money.ofMinorUnits(balance, Money.exponentOf(account.getCurrency())));
+            if (account.getCreatedAt() == 0) {
+                account.setCreatedAt(importedAt);
+            }
+            if (importedById.putIfAbsent(account.getId(), account) != null) {
+                return TransferMessages.importDuplicate(account.getId());
+            }
+            imported.add(account);
+        }
+
+        accountsLock.writeLock().lock();
+        try {
+            for (Account importedAccount : imported) {
+                if (accounts.get(importedAccount.getId()) != null) {
+                    return TransferMessages.importDuplicate(importedAccount.getId());
+                }
+            }
+            journal.appendAccountsImported(imported);
+            for (Account importedAccount : imported) {
+                accounts.putIfAbsent(importedAccount.getId(), new AccountRecord(importedAccount.getId(),
+                        importedAccount.getBalance().getMinorUnits(), importedAccount.getCurrency(),
+                        importedAccount.getCreatedAt()));
+            }
+        } finally {
+            accountsLock.writeLock().unlock();
+        }
+        logger.info("Imported {} accounts", imported.size());
+        return TransferMessages.imported(imported.size());
+    }
+
+    /**
+     * Takes the IDs the same way as {@link #writeAccountDetails(OutputStream)}.
+     */
+    @Override
+    public void exportAccounts(AccountFormat.AccountWriter out) throws IOException {
+        for (long id : sortedAccountIds()) {
+            AccountRecord record = findAccount(id);
+            if (record != null) {
+                out.write(record.id, record.balance, record.exponent, record.currency, record.createdAt);
+            }
+        }
+        out.finish();
+    }
+
+    @Override
+    public String handleTransaction(Transfer transactionDetails) throws IOException {
+        long sourceAccountId = transactionDetails.getSourceAccountId();
+        long destinationAccountId = transactionDetails.getDestinationAccountId();
+
+        if (sourceAccountId == destinationAccountId) {
+            return TransferMessages.accountError(sourceAccountId, destinationAccountId, true, true, false);
+        }
+
+        accountsLock.readLock().lock();
+        try {
+            AccountRecord source = accounts.get(sourceAccountId);
+            AccountRecord destination = accounts.get(destinationAccountId);
+            if (source == null || destination == null) {
+                return TransferMessages.accountError(sourceAccountId, destinationAccountId, source != null,
+                        destination != null, true);
+            }
+
+            long[] settled = new long[3];
+            String failure = settle(transactionDetails, source, destination, settled);
+            if (failure != null) {
+                return failure;
+            }
+            long debit = settled[0];
+            long credit = settled[1];
+            long journalAmount = settled[2];
+            if (shards != null) {
+                return transferOnShards(transactionDetails, source, destination, debit, credit, journalAmount);
+            }
+
+            int sourceStripe = stripeIndex(sourceAccountId);
+            int destinationStripe = stripeIndex(destinationAccountId);
+            ReentrantLock first = stripes[Math.min(sourceStripe, destinationStripe)];
+            ReentrantLock second = stripes[Math.max(sourceStripe, destinationStripe)];
+            first.lock();
+            second.lock();
+            try {
+                if (source.balance < debit) {
+                    return TransferMessages.insufficientBalance();
+                }
+                long newDestinationBalance = Math.addExact(destination.balance, credit);
+                long transactionId = lastTransactionId.incrementAndGet();
+                journal.appendTransfer(transactionId, sourceAccountId, destinationAccountId, journalAmount,
+                        transactionDetails.getCurrency(), debit, credit, transactionDetails.getCreatedAt());
+                source.balance -= debit;
+                destination.balance = newDestinationBalance;
+
+                transactionDetails.setId(transactionId);
+                return TransferMessages.successful(transactionId);
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Converts the transfer's amount into both accounts' currencies with one snapshot of the exchange rates. A
+     * transfer without a currency is taken to be in the source account's, and journaled so. On success settled
+     * holds the debit, the credit and the amount in the transfer's own currency for the journal, each in minor
+     * units.
+     *
+     * @return null if the transfer can be settled, otherwise the failure message
+     */
+    private String settle(Transfer transfer, AccountRecord source, AccountRecord destination, long[] settled) {
+        FxRates rates = exchangeRates.current();
+        if (transfer.getCurrency() == null) {
+            transfer.setCurrency(source.currency);
+        }
+        String currency = transfer.getCurrency();
+        FxRates.Rate toSource = rates.find(currency, source.currency);
+        FxRates.Rate toDestination = rates.find(currency, destination.currency);
+        if (toSource == null || toDestination == null) {
+            return TransferMessages.noExchangeRate(currency, toSource == null ? source.currency : destination.currency);
+        }
+        Money amount = transfer.getAmount();
+        try {
+            settled[0] = toSource.convert(amount, source.exponent);
+            settled[1] = toDestination.convert(amount, destination.exponent);
+            settled[2] = amount.toMinorUnits(Money.exponentOf(currency));
+        } catch (ArithmeticException e) {
+            return TransferMessages.invalidAmount(amount, currency);
+        }
+        return null;
+    }
+
+    /**
+     * Debits on the source shard, then credits and journals on the destination shard. Should the credit fail the
+     * debit is handed back to the source shard to be refunded. The caller holds the accounts read lock throughout,
+     * so neither account can be cleared in between.
+     */
+    private String transferOnShards(Transfer transactionDetails, AccountRecord source, AccountRecord destination,
+                                    long debit, long credit, long journalAmount) throws IOException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable creditDestination = () -> {
+            try {
+                long newDestinationBalance = Math.addExact(destination.balance, credit);
+                long transactionId = lastTransactionId.incrementAndGet();
+                journal.appendTransfer(transactionId, source.id, destination.id, journalAmount,
+                        transactionDetails.getCurrency(), debit, credit, transactionDetails.getCreatedAt());
+                destination.balance = newDestinationBalance;
+                transactionDetails.setId(transactionId);
+                result.complete(TransferMessages.successful(transactionId));
+            } catch (RuntimeException | IOException e) {
+                shards.execute(source.id, () -> source.balance += debit);
+                if (e instanceof ArithmeticException) {
+                    result.complete(TransferMessages.invalidAmount(transactionDetails.getAmount(),
+                            transactionDetails.getCurrency()));
+                } else {
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        shards.execute(source.id, () -> {
+            if (source.balance < debit) {
+                result.complete(TransferMessages.insufficientBalance());
+                return;
+            }
+            source.balance -= debit;
+            if (shards.shardOf(source.id) == shards.shardOf(destination.id)) {
+                creditDestination.run();
+            } else {
+                shards.execute(destination.id, creditDestination);
+            }
+        });
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for transfer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Transfer failed on its shard", e.getCause());
+        }
+    }
+
+    /**
+     * Best-effort batches are plain transfers one after the other. An all-or-nothing batch locks the stripes of
+     * every account it touches up front, in ascending order, checks all transfers against scratch balances and
+     * only then journals them as a single record and applies them. With transfer shards it pauses the shards of
+     * those accounts instead.
+     */
+    @Override
+    public List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing) throws IOException {
+        logger.debug("Processing a batch of {} transfers, all or nothing - {}", transfers.size(), allOrNothing);
+        if (!allOrNothing) {
+            List<String> results = new ArrayList<>(transfers.size());
+            for (Transfer transfer : transfers) {
+                results.add(handleTransaction(transfer));
+            }
+            return results;
+        }
+
+        accountsLock.readLock().lock();
+        try {
+            if (shards != null) {
+                long[] accountIds = transfers.stream()
+                        .flatMapToLong(transfer -> LongStream.of(transfer.getSourceAccountId(),
+                                transfer.getDestinationAccountId()))
+                        .toArray();
+                TransferShards.Pause pause;
+                try {
+                    pause = shards.pause(accountIds);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted pausing transfer shards");
+                }
+                try {
+                    return applyBatchAtomically(transfers);
+                } finally {
+                    pause.close();
+                }
+            }
+            int[] lockedStripes = transfers.stream()
+                    .flatMapToInt(transfer -> IntStream.of(stripeIndex(transfer.getSourceAccountId()),
+                            stripeIndex(transfer.getDestinationAccountId())))
+                    .distinct().sorted().toArray();
+            for (int stripe : lockedStripes) {
+                stripes[stripe].lock();
+            }
+            try {
+                return applyBatchAtomically(transfers);
+            } finally {
+                for (int i = lockedStripes.length - 1; i >= 0; i--) {
+                    stripes[lockedStripes[i]].unlock();
+                }
+            }
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+    }
+
+    private List<String> applyBatchAtomically(List<Transfer> transfers) throws IOException {
+        Map<Long, Long> scratchBalances = new HashMap<>();
+        long[] amounts = new long[transfers.size()];
+        long[] debits = new long[transfers.size()];
+        long[] credits = new long[transfers.size()];
+        long[] settled = new long[3];
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            long sourceAccountId = transfer.getSourceAccountId();
+            long destinationAccountId = transfer.getDestinationAccountId();
+            AccountRecord source = accounts.get(sourceAccountId);
+            AccountRecord destination = accounts.get(destinationAccountId);
+
+            String failure = null;
+            if (source == null || destination == null || sourceAccountId == destinationAccountId) {
+                failure = TransferMessages.accountError(sourceAccountId, destinationAccountId, source != null,
+                        destination != null, sourceAccountId != destinationAccountId);
+            } else {
+                failure = checkBatchTransfer(transfer, source, destination, scratchBalances, settled);
+            }
+            if (failure != null) {
+                return TransferMessages.batchRolledBack(transfers.size(), i, failure);
+            }
+            debits[i] = settled[0];
+            credits[i] = settled[1];
+            amounts[i] = settled[2];
+        }
+
+        long[] transactionIds = new long[transfers.size()];
+        List<String> results = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            transactionIds[i] = lastTransactionId.incrementAndGet();
+            results.add(TransferMessages.successful(transactionIds[i]));
+        }
+        journal.appendTransferBatch(transfers, transactionIds, amounts, debits, credits);
+        scratchBalances.forEach((id, balance) -> accounts.get(id).balance = balance);
+        return results;
+    }
+
+    /**
+     * Applies one transfer of an atomic batch to the scratch balances, leaving it settled as by {@link #settle}.
+     *
+     * @return null if it can be applied, otherwise the failure message
+     */
+    private String checkBatchTransfer(Transfer transfer, AccountRecord source, AccountRecord destination,
+                                      Map<Long, Long> scratchBalances, long[] settled) {
+        String failure = settle(transfer, source, destination, settled);
+        if (failure != null) {
+            return failure;
+        }
+        long sourceBalance = scratchBalances.getOrDefault(source.id, source.balance);
+        long destinationBalance = scratchBalances.getOrDefault(destination.id, destination.balance);
+        long debit = settled[0];
+        long newDestinationBalance;
+        try {
+            newDestinationBalance = Math.addExact(destinationBalance, settled[1]);
+        } catch (ArithmeticException e) {
+            return TransferMessages.invalidAmount(transfer.getAmount(), transfer.getCurrency());
+        }
+        if (sourceBalance < debit) {
+            return TransferMessages.insufficientBalance();
+        }
+        scratchBalances.put(source.id, sourceBalance - debit);
+        scratchBalances.put(destination.id, newDestinationBalance);
+        return null;
+    }
+
+    @Override
+    public String clearTables(String tableName) {
+        logger.info("Attempting to delete {}", tableName);
+        accountsLock.writeLock().lock();
+        try {
+            if (tableName.equalsIgnoreCase("accounts")) {
+                journal.appendAccountsCleared();
+                accounts.clear();
+                return "Accounts table cleared";
+            } else if (tableName.equalsIgnoreCase("transactions")) {
+                journal.appendTransactionsCleared();
+                lastTransactionId.set(0);
+                return "Transactions table cleared";
+            } else {
+                return "Invalid table name. Table name either [transactions] or [accounts]";
+            }
+        } catch (IOException e) {
+            logger.error("clearTable failed with exception {}", e.getMessage());
+            return "Failed to clear table " + e.getMessage();
+        } finally {
+            accountsLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (shards != null) {
+            shards.close();
+        }
+        journal.close();
+    }
+
+    private AccountRecord findAccount(long id) {
+        accountsLock.readLock().lock();
+        try {
+            return accounts.get(id);
+        } finally {
+            accountsLock.readLock().unlock();
+        }
+    }
+
+    private int stripeIndex(long accountId) {
+        return Math.floorMod(Long.hashCode(accountId), stripes.length);
+    }
+
+    private static final class AccountRecord {
+        private final long id;
+        private final String currency;
+        private final long createdAt;
+        private final int exponent;
+        // written under the account's stripe lock or by its shard, read without either for JSON
+        private volatile long balance;
+
+        private AccountRecord(long id, long balance, String currency, long createdAt) {
+            this.id = id;
+            this.balance = balance;
+            this.currency = currency;
+            this.createdAt = createdAt;
+            this.exponent = Money.exponentOf(currency);
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            AccountJsonCodec.writeAccount(generator, id, balance, exponent, currency, createdAt);
+        }
+
+        private Account toAccount() {
+            Account account = new Account();
+            account.setId(id);
+            account.setBalance(Money.ofMinorUnits(balance, exponent));
+            account.setCurrency(currency);
+            account.setCreatedAt(createdAt);
+            return account;
+        }
+    }
+
+    private final class JournalReplayer implements AccountJournal.Listener {
+
+        @Override
+        public void accountCreated(long id, long balanceMinorUnits, String currency, long createdAt) {
+            accounts.putIfAbsent(id, new AccountRecord(id, balanceMinorUnits, currency, createdAt));
+        }
+
+        @Override
+        public void transfer(long transactionId, long sourceAccountId, long destinationAccountId,
+                             long amountMinorUnits, String currency, long debitMinorUnits, long creditMinorUnits,
+                             long createdAt) {
+            accounts.get(sourceAccountId).balance -= debitMinorUnits;
+            accounts.get(destinationAccountId).balance += creditMinorUnits;
+            // transfers on different stripes or shards can reach the journal out of ID order
+            lastTransactionId.accumulateAndGet(transactionId, Math::max);
+        }
+
+        @Override
+        public void unconvertedTransfer(long transactionId, long sourceAccountId, long destinationAccountId,
+                                        long amountMinorUnits, String currency, long createdAt) {
+            // journalled in the transfer's currency, applied in each account's
+            int exponent = Money.exponentOf(currency);
+            AccountRecord source = accounts.get(sourceAccountId);
+            AccountRecord destination = accounts.get(destinationAccountId);
+            transfer(transactionId, sourceAccountId, destinationAccountId, amountMinorUnits, currency,
+                    Money.rescale(amountMinorUnits, exponent, source.exponent),
+                    Money.rescale(amountMinorUnits, exponent, destination.exponent), createdAt);
+        }
+
+        @Override
+        public void accountsCleared() {
+            accounts.clear();
+        }
+
+        @Override
+        public void transactionsCleared() {
+            lastTransactionId.set(0);
+        }
+    }
+}
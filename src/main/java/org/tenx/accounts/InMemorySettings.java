@@ -0,0 +1,52 @@
+package org.tenx.accounts;
+
+/**
+ * Settings for {@link InMemoryAccountStore}, bound from {@code tenx.memory.*}.
+ */
+public class InMemorySettings {
+    private String journalPath = "10xBank.journal";
+    private boolean journalSync = true;
+    private int initialCapacity = 1024;
+    private int lockStripes = 256;
+    private int transferShards = 0;
+
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(String journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    public boolean isJournalSync() {
+        return journalSync;
+    }
+
+    public void setJournalSync(boolean journalSync) {
+        this.journalSync = journalSync;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    public int getLockStripes() {
+        return lockStripes;
+    }
+
+    public void setLockStripes(int lockStripes) {
+        this.lockStripes = lockStripes;
+    }
+
+    public int getTransferShards() {
+        return transferShards;
+    }
+
+    public void setTransferShards(int transferShards) {
+        this.transferShards = transferShards;
+    }
+}
@@ -0,0 +1,229 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times every {@link AccountStore} call, counts transfers by outcome and keeps a gauge of calls in flight, for
+ * whichever engine it wraps, and hands each transfer to the {@link AuditLog}. Engine specific detail, such as per
+ * statement timings, is recorded by the engine.
+ */
+public class InstrumentedAccountStore implements AccountStore {
+    private final AccountStore delegate;
+    private final BankMetrics metrics;
+    private final AuditLog auditLog;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Timer getAccountTimer;
+    private final Timer listAccountsTimer;
+    private final Timer createAccountTimer;
+    private final Timer importAccountsTimer;
+    private final Timer exportAccountsTimer;
+    private final Timer transferTimer;
+    private final Timer transferBatchTimer;
+    private final Timer transactionHistoryTimer;
+    private final Timer getTransactionTimer;
+
+    public InstrumentedAccountStore(AccountStore delegate, BankMetrics metrics, AuditLog auditLog) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.auditLog = auditLog;
+        getAccountTimer = operationTimer("get_account");
+        listAccountsTimer = operationTimer("list_accounts");
+        createAccountTimer = operationTimer("create_account");
+        importAccountsTimer = operationTimer("import_accounts");
+        exportAccountsTimer = operationTimer("export_accounts");
+        transferTimer = operationTimer("transfer");
+        transferBatchTimer = operationTimer("transfer_batch");
+        transactionHistoryTimer = operationTimer("transaction_history");
+        getTransactionTimer = operationTimer("get_transaction");
+        Gauge.builder("tenx.store.in_flight", inFlight, AtomicInteger::get)
+                .description("Store calls currently running")
+                .register(metrics.getRegistry());
+    }
+
+    private Timer operationTimer(String operation) {
+        return metrics.timer("tenx.store.operation", "operation", operation);
+    }
+
+    public AccountStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getAccountDetails() throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.getAccountDetails();
+        } finally {
+            end(listAccountsTimer, start);
+        }
+    }
+
+    @Override
+    public String getAccountDetails(long afterId, int limit) throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.getAccountDetails(afterId, limit);
+        } finally {
+            end(listAccountsTimer, start);
+        }
+    }
+
+    @Override
+    public void writeAccountDetails(OutputStream out) throws IOException, SQLException {
+        long start = begin();
+        try {
+            delegate.writeAccountDetails(out);
+        } finally {
+            end(listAccountsTimer, start);
+        }
+    }
+
+    @Override
+    public String getAccountDetails(long id) throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.getAccountDetails(id);
+        } finally {
+            end(getAccountTimer, start);
+        }
+    }
+
+    @Override
+    public String createAccountEntry(Account account) throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.createAccountEntry(account);
+        } finally {
+            end(createAccountTimer, start);
+        }
+    }
+
+    @Override
+    public String importAccounts(AccountFormat.AccountReader accounts) throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.importAccounts(accounts);
+        } finally {
+            end(importAccountsTimer, start);
+        }
+    }
+
+    @Override
+    public void exportAccounts(AccountFormat.AccountWriter out) throws IOException, SQLException {
+        long start = begin();
+        try {
+            delegate.exportAccounts(out);
+        } finally {
+            end(exportAccountsTimer, start);
+        }
+    }
+
+    @Override
+    public String handleTransaction(Transfer transactionDetails) throws IOException, SQLException {
+        long start = begin();
+        BankMetrics.Outcome outcome = BankMetrics.Outcome.ERROR;
+        try {
+            String result = delegate.handleTransaction(transactionDetails);
+            outcome = TransferMessages.outcomeOf(result);
+            return result;
+        } finally {
+            metrics.countTransfer(outcome);
+            auditLog.transfer(transactionDetails, outcome, end(transferTimer, start));
+        }
+    }
+
+    @Override
+    public List<String> handleTransactionBatch(List<Transfer> transfers, boolean allOrNothing)
+            throws IOException, SQLException {
+        long start = begin();
+        int succeeded = 0;
+        try {
+            List<String> results = delegate.handleTransactionBatch(transfers, allOrNothing);
+            for (String result : results) {
+                BankMetrics.Outcome outcome = TransferMessages.outcomeOf(result);
+                metrics.countTransfer(outcome);
+                if (outcome == BankMetrics.Outcome.SUCCESS) {
+                    succeeded++;
+                }
+            }
+            return results;
+        } finally {
+            auditLog.transferBatch(transfers.size(), succeeded, allOrNothing, end(transferBatchTimer, start));
+        }
+    }
+
+    @Override
+    public String getTransactionHistory(long accountId, long from, long to, HistoryCursor after, int limit)
+            throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.getTransactionHistory(accountId, from, to, after, limit);
+        } finally {
+            end(transactionHistoryTimer, start);
+        }
+    }
+
+    @Override
+    public String getTransaction(long transactionId) throws IOException, SQLException {
+        long start = begin();
+        try {
+            return delegate.getTransaction(transactionId);
+        } finally {
+            end(getTransactionTimer, start);
+        }
+    }
+
+    @Override
+    public String getReconciliationReport() throws IOException {
+        return delegate.getReconciliationReport();
+    }
+
+    @Override
+    public String archiveTransactions(long before) {
+        return delegate.archiveTransactions(before);
+    }
+
+    @Override
+    public String getArchiveStatus() throws IOException {
+        return delegate.getArchiveStatus();
+    }
+
+    @Override
+    public void addReadRefreshListener(Runnable listener) {
+        delegate.addReadRefreshListener(listener);
+    }
+
+    @Override
+    public String clearTables(String tableName) {
+        return delegate.clearTables(tableName);
+    }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        delegate.close();
+    }
+
+    private long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the duration of the call in nanoseconds
+     */
+    private long end(Timer timer, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        timer.record(duration, TimeUnit.NANOSECONDS);
+        inFlight.decrementAndGet();
+        return duration;
+    }
+}
@@ -0,0 +1,368 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves ledger rows older than a cutoff out of {@code transactions} into a dated archive database,
+ * {@code <archive-directory>/transactions-yyyy-MM-dd.db}, while transfers keep running. Rows go a chunk at a
+ * time: the chunk is read in a short read transaction, written to the archive and committed there, and only then
+ * deleted from the ledger in a short write transaction of its own, with a pause before the next chunk so queued
+ * transfers get the write lock in between. A row already in the archive with the same transaction ID is skipped
+ * if it is the same row, so a run that stopped between the two commits copies the chunk again harmlessly the next
+ * time. Any other row with that ID, e.g. one issued again after the ledger was cleared, fails the chunk before
+ * anything is deleted from the ledger.
+ *
+ * Only rows the {@link LedgerReconciler} has already added to its checkpoint are archived, which keeps the ledger
+ * sums valid without the archived rows. The newest ledger row is never archived either, so SQLite never hands out
+ * a rowid again and the reconciler's position stays meaningful.
+ *
+ * One run at a time, started on demand with {@link #start(long)} or every archive interval when a retention period
+ * is set. {@link #getStatus()} reports the progress of the current or last run.
+ */
+public class LedgerArchiver implements AutoCloseable {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+            .withZone(ZoneId.systemDefault());
+
+    public enum State { IDLE, RUNNING, COMPLETED, STOPPED, FAILED }
+
+    private final Logger logger = LoggerFactory.getLogger(LedgerArchiver.class);
+
+    private final ConnectionPool connectionPool;
+    private final LedgerReconciler reconciler;
+    private final Path directory;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final Counter archivedRows;
+    private final Timer chunkTimer;
+    private final ScheduledExecutorService executor;
+    // held for the whole of a run, see whileStopped
+    private final Object runLock = new Object();
+
+    private volatile boolean stopRequested;
+    private volatile State state = State.IDLE;
+    private volatile long before;
+    private volatile String archiveFile;
+    private volatile long upTo;
+    private volatile long position;
+    private volatile long rowsArchived;
+    private volatile int chunks;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    public LedgerArchiver(ConnectionPool connectionPool, LedgerReconciler reconciler, DatabaseSettings settings,
+                          BankMetrics metrics) {
+        this.connectionPool = connectionPool;
+        this.reconciler = reconciler;
+        this.directory = Paths.get(settings.getArchiveDirectory());
+        this.chunkSize = settings.getArchiveChunkSize();
+        this.pauseMillis = settings.getArchivePauseMillis();
+        archivedRows = Counter.builder("tenx.archive.rows")
+                .description("Ledger rows moved to the archive")
+                .register(metrics.getRegistry());
+        chunkTimer = metrics.timer("tenx.archive.chunk", "engine", "sqlite");
+
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ledger-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.getArchiveRetentionDays() > 0) {
+            long retention = settings.getArchiveRetentionDays() * DAY_MILLIS;
+            long interval = settings.getArchiveIntervalMillis();
+            executor.scheduleWithFixedDelay(() -> start(Timestamps.now() - retention), interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts archiving the ledger rows created before the cutoff in the background.
+     *
+     * @param before epoch milliseconds, rows created earlier are archived
+     * @return what was started, or why nothing was
+     */
+    public synchronized String start(long before) {
+        if (state == State.RUNNING) {
+            return "An archive run is already in progress";
+        }
+        this.before = before;
+        archiveFile = directory.resolve("transactions-" + FILE_DATE.format(Instant.now()) + ".db")
+                .toString();
+        upTo = 0;
+        position = 0;
+        rowsArchived = 0;
+        chunks = 0;
+        startedAt = Timestamps.now();
+        finishedAt = 0;
+        error = null;
+        state = State.RUNNING;
+        executor.execute(this::run);
+        return "Archiving transactions created before " + Timestamps.format(before) + " to " + archiveFile;
+    }
+
+    private void run() {
+        synchronized (runLock) {
+            State outcome;
+            try {
+                outcome = archive();
+            } catch (SQLException | IOException | RuntimeException e) {
+                logger.warn("Archiving transactions failed after {} rows. {}", rowsArchived, e.getMessage());
+                error = e.getMessage();
+                outcome = State.FAILED;
+            }
+            finishedAt = Timestamps.now();
+            state = outcome;
+        }
+    }
+
+    private State archive() throws SQLException, IOException {
+        reconciler.reconcile();
+        String tableSql;
+        try (PooledConnection conn = connectionPool.borrow()) {
+            conn.beginRead();
+            long checkpoint;
+            try (ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_POSITION_RETRIEVAL)) {
+                checkpoint = rs.next() ? rs.getLong("lastRowid") : 0;
+            }
+            try (ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_END_RETRIEVAL)) {
+                rs.next();
+                upTo = Math.min(checkpoint, rs.getLong("lastRowid") - 1);
+            }
+            tableSql = tableSql(conn);
+            conn.commit();
+        }
+        if (upTo <= 0) {
+            return State.COMPLETED;
+        }
+
+        Files.createDirectories(directory);
+        logger.info("Archiving transactions created before {} up to row {} to {}", Timestamps.format(before), upTo,
+                archiveFile);
+        try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + archiveFile)) {
+            createArchiveTable(archive, tableSql);
+            while (!stopRequested) {
+                long start = System.nanoTime();
+                int read = archiveChunk(archive);
+                if (read == 0) {
+                    break;
+                }
+                chunkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (read < chunkSize) {
+                    break;
+                }
+                pause();
+            }
+        }
+        logger.info("Archived {} transactions in {} chunks to {}", rowsArchived, chunks, archiveFile);
+        return stopRequested ? State.STOPPED : State.COMPLETED;
+    }
+
+    /**
+     * Copies the next chunk to the archive and commits it there, then deletes the same rowid range from the
+     * ledger. Ledger rows are never updated, so the delete removes exactly the rows that were copied.
+     *
+     * @return the number of rows archived
+     */
+    private int archiveChunk(Connection archive) throws SQLException {
+        try (PooledConnection conn = connectionPool.borrow()) {
+            try {
+                return archiveChunk(conn, archive);
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    private int archiveChunk(PooledConnection conn, Connection archive) throws SQLException {
+        conn.beginRead();
+        PreparedStatement chunkStatement = conn.prepare(SqlStatement.LEDGER_ARCHIVE_CHUNK);
+        chunkStatement.setLong(1, position);
+        chunkStatement.setLong(2, upTo);
+        chunkStatement.setLong(3, before);
+        chunkStatement.setInt(4, chunkSize);
+        int read = 0;
+        long last = position;
+        try (Statement control = archive.createStatement();
+             ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_ARCHIVE_CHUNK)) {
+            ResultSetMetaData columns = rs.getMetaData();
+            control.execute("BEGIN IMMEDIATE");
+            try (PreparedStatement insert = archive.prepareStatement(insertSql(columns));
+                 PreparedStatement archived = archive.prepareStatement(archivedSql(columns))) {
+                while (rs.next()) {
+                    // column 1 is the rowid, the rest are the ledger columns in table order
+                    for (int i = 2; i <= columns.getColumnCount(); i++) {
+                        insert.setObject(i - 1, rs.getObject(i));
+                        archived.setObject(i - 1, rs.getObject(i));
+                    }
+                    if (insert.executeUpdate() == 0 && !isArchived(archived)) {
+                        throw new SQLException("Transaction " + rs.getObject("transactionId") + " is already in "
+                                + archiveFile + " with different values, archiving stopped before deleting it");
+                    }
+                    last = rs.getLong(1);
+                    read++;
+                }
+                control.execute("COMMIT");
+            } catch (SQLException e) {
+                control.execute("ROLLBACK");
+                throw e;
+            }
+        }
+        conn.commit();
+        if (read == 0) {
+            return 0;
+        }
+
+        conn.beginImmediate();
+        PreparedStatement deleteStatement = conn.prepare(SqlStatement.LEDGER_ARCHIVE_DELETE);
+        deleteStatement.setLong(1, position);
+        deleteStatement.setLong(2, last);
+        deleteStatement.setLong(3, before);
+        conn.executeUpdate(SqlStatement.LEDGER_ARCHIVE_DELETE);
+        conn.commit();
+
+        position = last;
+        rowsArchived += read;
+        chunks++;
+        archivedRows.increment(read);
+        return read;
+    }
+
+    /**
+     * @return the CREATE TABLE statement of the ledger, so the archive always has the ledger's current columns
+     */
+    private static String tableSql(PooledConnection conn) throws SQLException {
+        conn.prepare(SqlStatement.TABLE_SCHEMA_RETRIEVAL).setString(1, "transactions");
+        try (ResultSet rs = conn.executeQuery(SqlStatement.TABLE_SCHEMA_RETRIEVAL)) {
+            if (!rs.next()) {
+                throw new SQLException("The transactions table does not exist");
+            }
+            return rs.getString("sql");
+        }
+    }
+
+    private static void createArchiveTable(Connection archive, String tableSql) throws SQLException {
+        try (PreparedStatement exists = archive.prepareStatement(SqlStatement.TABLE_SCHEMA_RETRIEVAL.getQuery())) {
+            exists.setString(1, "transactions");
+            try (ResultSet rs = exists.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        try (Statement statement = archive.createStatement()) {
+            statement.execute(tableSql);
+        }
+    }
+
+    private static String insertSql(ResultSetMetaData columns) throws SQLException {
+        StringJoiner names = new StringJoiner(", ", "(", ")");
+        StringJoiner values = new StringJoiner(", ", "(", ")");
+        for (int i = 2; i <= columns.getColumnCount(); i++) {
+            names.add(columns.getColumnName(i));
+            values.add("?");
+        }
+        return "INSERT INTO transactions " + names + " VALUES " + values + " ON CONFLICT DO NOTHING";
+    }
+
+    private static String archivedSql(ResultSetMetaData columns) throws SQLException {
+        StringJoiner matches = new StringJoiner(" AND ");
+        for (int i = 2; i <= columns.getColumnCount(); i++) {
+            matches.add(columns.getColumnName(i) + " IS ?");
+        }
+        return "SELECT 1 FROM transactions WHERE " + matches;
+    }
+
+    private static boolean isArchived(PreparedStatement archived) throws SQLException {
+        try (ResultSet rs = archived.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRequested = true;
+        }
+    }
+
+    /**
+     * Stops the run in progress at its next chunk and runs the action before another run can start. Used to
+     * reset the ledger, whose rowids an interrupted run would otherwise still be deleting by.
+     */
+    public <T> T whileStopped(Action<T> action) throws SQLException {
+        stopRequested = true;
+        synchronized (runLock) {
+            stopRequested = false;
+            return action.run();
+        }
+    }
+
+    public interface Action<T> {
+        T run() throws SQLException;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The progress of the current or last run: its cutoff and archive file, the rows and chunks archived so far
+     * out of the rowid range it covers, and how it ended.
+     */
+    public String getStatus() throws IOException {
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("state", state.name());
+            generator.writeStringField("before", before == 0 ? null : Timestamps.format(before));
+            generator.writeStringField("archiveFile", archiveFile);
+            generator.writeNumberField("rowsArchived", rowsArchived);
+            generator.writeNumberField("chunks", chunks);
+            generator.writeNumberField("position", position);
+            generator.writeNumberField("upTo", upTo);
+            generator.writeStringField("startedAt", startedAt == 0 ? null : Timestamps.format(startedAt));
+            generator.writeStringField("finishedAt", finishedAt == 0 ? null : Timestamps.format(finishedAt));
+            generator.writeStringField("error", error);
+            generator.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void close() {
+        stopRequested = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the balances stored in {@code accounts} against the {@code transactions} ledger. An account's ledger
+ * balance is its opening balance plus every credit minus every debit; the running credit-minus-debit sum of each
+ * account is kept in memory and checkpointed to {@code ledger_checkpoints} together with the rowid of the last
+ * ledger row it covers. A pass therefore only reads the ledger rows added since the checkpoint, and only
+ * re-verifies the accounts those rows touched.
+ *
+ * The ledger is read chunk by chunk, each chunk in its own short read transaction, so a long catch-up never pins
+ * one snapshot and in WAL mode never blocks transfers. The last chunk and the balance check share a snapshot,
+ * which keeps them consistent: a transfer writes its balances and its ledger row in one transaction. Checkpoints
+ * are written after every chunk in a small write transaction of their own.
+ *
+ * Relies on ledger rowids only growing. That holds while ledger rows are only deleted all together, see
+ * {@link #rebaseline()}, or by the {@link LedgerArchiver}, which never removes the newest row.
+ */
+public class LedgerReconciler implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(LedgerReconciler.class);
+
+    private final ConnectionPool connectionPool;
+    private final int chunkSize;
+    private final LongObjectHashMap<AccountFlow> netFlows = new LongObjectHashMap<>(1024);
+    private final Map<Long, Drift> drifts = new ConcurrentHashMap<>();
+    private final Counter ledgerRows;
+    private final Timer passTimer;
+    private final ScheduledExecutorService scheduler;
+
+    // rowid of the last ledger row in netFlows, -1 until the checkpoint has been loaded
+    private volatile long position = -1;
+    private boolean fullVerificationPending;
+    private volatile long lastPassAt;
+    private volatile int lastPassVerified;
+
+    public LedgerReconciler(ConnectionPool connectionPool, DatabaseSettings settings, BankMetrics metrics) {
+        this.connectionPool = connectionPool;
+        this.chunkSize = settings.getReconciliationChunkSize();
+        ledgerRows = Counter.builder("tenx.reconciliation.ledger.rows")
+                .description("Ledger rows read by the balance reconciliation")
+                .register(metrics.getRegistry());
+        passTimer = metrics.timer("tenx.reconciliation.pass", "engine", "sqlite");
+        Gauge.builder("tenx.reconciliation.drifted.accounts", drifts, Map::size)
+                .description("Accounts whose stored balance differs from their ledger balance")
+                .register(metrics.getRegistry());
+
+        if (settings.isReconciliationEnabled()) {
+            long interval = settings.getReconciliationIntervalMillis();
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "ledger-reconciler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::runScheduledPass, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    private void runScheduledPass() {
+        try {
+            reconcile();
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Ledger reconciliation pass failed, retrying next interval. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the ledger rows added since the last checkpoint and verifies the accounts they touched, or every
+     * account on the first pass after the checkpoint was loaded.
+     *
+     * @return the number of ledger rows read
+     */
+    public synchronized int reconcile() throws SQLException {
+        long start = System.nanoTime();
+        try (PooledConnection conn = connectionPool.borrow()) {
+            loadCheckpointIfMoved(conn);
+            LongObjectHashMap<AccountFlow> touched = new LongObjectHashMap<>(64);
+            int rows = 0;
+            while (true) {
+                LongObjectHashMap<AccountFlow> chunkTouched = new LongObjectHashMap<>(64);
+                conn.beginRead();
+                int read = readChunk(conn, touched, chunkTouched);
+                boolean caughtUp = read < chunkSize;
+                if (caughtUp) {
+                    verify(conn, touched);
+                }
+                conn.commit();
+                if (read > 0) {
+                    saveCheckpoint(conn, chunkTouched);
+                }
+                rows += read;
+                if (caughtUp) {
+                    break;
+                }
+            }
+            ledgerRows.increment(rows);
+            lastPassAt = Timestamps.now();
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            // the sums may be ahead of the saved checkpoint, start again from it
+            position = -1;
+            throw e;
+        } finally {
+            passTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Reloads the sums when the saved checkpoint is not the one in memory: on the first pass, after
+     * {@link #rebaseline()} or a failed pass, or when another process has moved it.
+     */
+    private void loadCheckpointIfMoved(PooledConnection conn) throws SQLException {
+        conn.beginRead();
+        long saved;
+        try (ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_POSITION_RETRIEVAL)) {
+            saved = rs.next() ? rs.getLong("lastRowid") : 0;
+        }
+        if (saved != position) {
+            logger.info("Loading the ledger checkpoint at row {}", saved);
+            netFlows.clear();
+            try (ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_CHECKPOINT_RETRIEVAL)) {
+                while (rs.next()) {
+                    long accountId = rs.getLong("accountId");
+                    netFlows.putIfAbsent(accountId, new AccountFlow(accountId, rs.getLong("netFlow")));
+                }
+            }
+            position = saved;
+            fullVerificationPending = true;
+        }
+        conn.commit();
+    }
+
+    private int readChunk(PooledConnection conn, LongObjectHashMap<AccountFlow> touched,
+                          LongObjectHashMap<AccountFlow> chunkTouched) throws SQLException {
+        PreparedStatement chunkStatement = conn.prepare(SqlStatement.LEDGER_CHUNK);
+        chunkStatement.setLong(1, position);
+        chunkStatement.setInt(2, chunkSize);
+        int read = 0;
+        long last = position;
+        try (ResultSet rs = conn.executeQuery(SqlStatement.LEDGER_CHUNK)) {
+            while (rs.next()) {
+                flowOf(rs.getLong("sourceId"), touched, chunkTouched).netFlow -= rs.getLong("sourceAmount");
+                flowOf(rs.getLong("destinationId"), touched, chunkTouched).netFlow += rs.getLong("destinationAmount");
+                last = rs.getLong("position");
+                read++;
+            }
+        }
+        position = last;
+        return read;
+    }
+
+    private AccountFlow flowOf(long accountId, LongObjectHashMap<AccountFlow> touched,
+                               LongObjectHashMap<AccountFlow> chunkTouched) {
+        AccountFlow flow = netFlows.get(accountId);
+        if (flow == null) {
+            flow = new AccountFlow(accountId, 0);
+            netFlows.putIfAbsent(accountId, flow);
+        }
+        touched.putIfAbsent(accountId, flow);
+        chunkTouched.putIfAbsent(accountId, flow);
+        return flow;
+    }
+
+    /**
+     * Compares stored and ledger balances in the caller's read transaction. Past a chunk's worth of accounts one
+     * scan of the accounts table is cheaper than a lookup each.
+     */
+    private void verify(PooledConnection conn, LongObjectHashMap<AccountFlow> touched) throws SQLException {
+        if (fullVerificationPending || touched.size() > chunkSize) {
+            Map<Long, Drift> found = new HashMap<>();
+            int verified = 0;
+            try (ResultSet rs = conn.executeQuery(SqlStatement.ALL_ACCOUNTS_RECONCILIATION)) {
+                while (rs.next()) {
+                    long accountId = rs.getLong("id");
+                    AccountFlow flow = netFlows.get(accountId);
+                    Drift drift = check(accountId, rs.getLong("balance"), rs.getLong("openingBalance"),
+                            rs.getString("currency"), flow == null ? 0 : flow.netFlow);
+                    if (drift != null) {
+                        found.put(accountId, drift);
+                    }
+                    verified++;
+                }
+            }
+            drifts.keySet().retainAll(found.keySet());
+            lastPassVerified = verified;
+            fullVerificationPending = false;
+            return;
+        }
+
+        List<AccountFlow> accounts = new ArrayList<>(touched.size());
+        touched.forEachValue(accounts::add);
+        PreparedStatement accountStatement = conn.prepare(SqlStatement.ACCOUNT_RECONCILIATION_RETRIEVAL);
+        for (AccountFlow flow : accounts) {
+            accountStatement.setLong(1, flow.accountId);
+            try (ResultSet rs = conn.executeQuery(SqlStatement.ACCOUNT_RECONCILIATION_RETRIEVAL)) {
+                if (rs.next()) {
+                    check(flow.accountId, rs.getLong("balance"), rs.getLong("openingBalance"),
+                            rs.getString("currency"), flow.netFlow);
+                } else {
+                    drifts.remove(flow.accountId);
+                }
+            }
+        }
+        lastPassVerified = accounts.size();
+    }
+
+    /**
+     * @return the drift recorded for the account, or null if its balances agree
+     */
+    private Drift check(long accountId, long balance, long openingBalance, String currency, long netFlow) {
+        long ledgerBalance = openingBalance + netFlow;
+        if (balance == ledgerBalance) {
+            drifts.remove(accountId);
+            return null;
+        }
+        Drift drift = new Drift(accountId, balance, ledgerBalance, currency, position);
+        Drift previous = drifts.put(accountId, drift);
+        if (previous == null || previous.balance != balance || previous.ledgerBalance != ledgerBalance) {
+            int exponent = Money.exponentOf(currency);
+            logger.warn("Account {} has balance {} but its ledger adds up to {}", accountId,
+                    Money.format(balance, exponent), Money.format(ledgerBalance, exponent));
+        }
+        return drift;
+    }
+
+    private void saveCheckpoint(PooledConnection conn, LongObjectHashMap<AccountFlow> chunkTouched)
+            throws SQLException {
+        List<AccountFlow> accounts = new ArrayList<>(chunkTouched.size());
+        chunkTouched.forEachValue(accounts::add);
+        conn.beginImmediate();
+        PreparedStatement checkpointStatement = conn.prepare(SqlStatement.LEDGER_CHECKPOINT_UPDATE);
+        for (AccountFlow flow : accounts) {
+            checkpointStatement.setLong(1, flow.accountId);
+            checkpointStatement.setLong(2, flow.netFlow);
+            checkpointStatement.addBatch();
+        }
+        conn.executeBatch(SqlStatement.LEDGER_CHECKPOINT_UPDATE);
+        conn.prepare(SqlStatement.LEDGER_POSITION_UPDATE).setLong(1, position);
+        conn.executeUpdate(SqlStatement.LEDGER_POSITION_UPDATE);
+        conn.commit();
+    }
+
+    /**
+     * Takes the current balances as the opening balances and starts the ledger sums again from the end of the
+     * ledger. Used after a table has been cleared, when the ledger no longer explains the balances.
+     */
+    public synchronized void rebaseline() throws SQLException {
+        try (PooledConnection conn = connectionPool.borrow()) {
+            conn.beginImmediate();
+            conn.executeUpdate(SqlStatement.OPENING_BALANCE_RESET);
+            conn.executeUpdate(SqlStatement.LEDGER_CHECKPOINT_CLEAR);
+            conn.executeUpdate(SqlStatement.LEDGER_POSITION_RESET);
+            conn.commit();
+        }
+        drifts.clear();
+        position = -1;
+    }
+
+    /**
+     * The outcome of the passes so far: the checkpoint position, when the last pass finished, how many accounts
+     * it verified and every account currently drifting.
+     */
+    public String getReport() throws IOException {
+        List<Drift> current = new ArrayList<>(drifts.values());
+        current.sort((a, b) -> Long.compare(a.accountId, b.accountId));
+        StringWriter out = new StringWriter(128);
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("position", Math.max(position, 0));
+            generator.writeStringField("lastPassAt", lastPassAt == 0 ? null : Timestamps.format(lastPassAt));
+            generator.writeNumberField("accountsVerified", lastPassVerified);
+            generator.writeArrayFieldStart("driftedAccounts");
+            for (Drift drift : current) {
+                int exponent = Money.exponentOf(drift.currency);
+                generator.writeStartObject();
+                generator.writeNumberField("accountId", drift.accountId);
+                generator.writeFieldName("balance");
+                generator.writeNumber(Money.format(drift.balance, exponent));
+                generator.writeFieldName("ledgerBalance");
+                generator.writeNumber(Money.format(drift.ledgerBalance, exponent));
+                generator.writeStringField("currency", drift.currency);
+                generator.writeNumberField("position", drift.position);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    public int getDriftedAccountCount() {
+        return drifts.size();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class AccountFlow {
+        private final long accountId;
+        private long netFlow;
+
+        private AccountFlow(long accountId, long netFlow) {
+            this.accountId = accountId;
+            this.netFlow = netFlow;
+        }
+    }
+
+    private static final class Drift {
+        private final long accountId;
+        private final long balance;
+        private final long ledgerBalance;
+        private final String currency;
+        private final long position;
+
+        private Drift(long accountId, long balance, long ledgerBalance, String currency, long position) {
+            this.accountId = accountId;
+            this.balance = balance;
+            this.ledgerBalance = ledgerBalance;
+            this.currency = currency;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * An exact amount of money held as a long count of minor units plus the decimal exponent they are in, so 10.20
+ * is 1020 at exponent 2. Amounts read from JSON keep the exponent they were written with; the storage engines
+ * convert them with {@link #toMinorUnits(int)} to the exponent of the account's currency ({@link #exponentOf})
+ * and do all balance arithmetic on plain longs.
+ *
+ * In JSON it is a plain number, written the way a double used to be (at least one decimal place, no trailing
+ * zeros), so 100000 is {@code 100000.0} and 10.20 is {@code 10.2}.
+ */
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money {
+    public static final Money ZERO = new Money(0, 0);
+
+    /** Exponent used for currencies without minor units of their own, or none given. */
+    public static final int DEFAULT_EXPONENT = 2;
+    private static final int MAX_EXPONENT = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_EXPONENT + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long minorUnits;
+    private final int exponent;
+
+    private Money(long minorUnits, int exponent) {
+        this.minorUnits = minorUnits;
+        this.exponent = exponent;
+    }
+
+    public static Money ofMinorUnits(long minorUnits, int exponent) {
+        if (exponent < 0 || exponent > MAX_EXPONENT) {
+            throw new IllegalArgumentException("Unsupported money exponent " + exponent);
+        }
+        return new Money(minorUnits, exponent);
+    }
+
+    /**
+     * @throws ArithmeticException if the amount does not fit in a long count of minor units
+     */
+    public static Money of(BigDecimal amount) {
+        BigDecimal normalised = amount.scale() < 0 ? amount.setScale(0) : amount;
+        return ofMinorUnits(normalised.unscaledValue().longValueExact(), normalised.scale());
+    }
+
+    public static Money parse(String amount) {
+        return of(new BigDecimal(amount));
+    }
+
+    /**
+     * @return the number of decimal places of the currency's minor unit, e.g. 2 for GBP and 0 for JPY
+     */
+    public static int exponentOf(String currencyCode) {
+        if (currencyCode == null) {
+            return DEFAULT_EXPONENT;
+        }
+        try {
+            int digits = Currency.getInstance(currencyCode.toUpperCase()).getDefaultFractionDigits();
+            return digits < 0 ? DEFAULT_EXPONENT : digits;
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_EXPONENT;
+        }
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public int getExponent() {
+        return exponent;
+    }
+
+    /**
+     * @return this amount counted in minor units of the given exponent
+     * @throws ArithmeticException if the amount has more decimal places than the exponent allows, or overflows
+     */
+    public long toMinorUnits(int targetExponent) {
+        return rescale(minorUnits, exponent, targetExponent);
+    }
+
+    /**
+     * Converts a count of minor units from one exponent to another without creating a {@link Money}.
+     *
+     * @throws ArithmeticException if the amount has more decimal places than the target exponent allows, or
+     * overflows
+     */
+    public static long rescale(long minorUnits, int exponent, int targetExponent) {
+        if (targetExponent == exponent) {
+            return minorUnits;
+        }
+        if (targetExponent > exponent) {
+            return Math.multiplyExact(minorUnits, POWERS_OF_TEN[targetExponent - exponent]);
+        }
+        long divisor = POWERS_OF_TEN[exponent - targetExponent];
+        if (minorUnits % divisor != 0) {
+            throw new ArithmeticException(format(minorUnits, exponent) + " has more than " + targetExponent +
+                    " decimal places");
+        }
+        return minorUnits / divisor;
+    }
+
+    /**
+     * @return 10 to the given power, for 0 to 18
+     */
+    static long powerOfTen(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, exponent);
+    }
+
+    /**
+     * Formats minor units as a decimal with at least one and at most exponent decimal places.
+     */
+    public static String format(long minorUnits, int exponent) {
+        StringBuilder text = new StringBuilder(24);
+        if (minorUnits < 0) {
+            text.append('-');
+        }
+        // negate through unsigned division so Long.MIN_VALUE formats correctly
+        long divisor = POWERS_OF_TEN[exponent];
+        long whole = Long.divideUnsigned(Math.abs(minorUnits), divisor);
+        long fraction = Long.remainderUnsigned(Math.abs(minorUnits), divisor);
+        text.append(Long.toUnsignedString(whole)).append('.');
+
+        int digits = exponent;
+        while (digits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        String fractionText = Long.toString(fraction);
+        for (int i = fractionText.length(); i < digits; i++) {
+            text.append('0');
+        }
+        return text.append(fractionText).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        return toBigDecimal().compareTo(((Money) o).toBigDecimal()) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return toBigDecimal().stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return format(minorUnits, exponent);
+    }
+
+    /**
+     * Reads an amount at the parser's current token, a number or a numeric string, for the streaming codecs.
+     *
+     * @return {@link #ZERO} for a JSON null, as data binding gives
+     */
+    static Money read(JsonParser parser) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NULL)) {
+            return ZERO;
+        }
+        try {
+            if (parser.hasToken(JsonToken.VALUE_STRING)) {
+                return parse(parser.getText().trim());
+            }
+            if (parser.currentToken() != null && parser.currentToken().isNumeric()) {
+                return of(parser.getDecimalValue());
+            }
+        } catch (ArithmeticException | IllegalArgumentException e) {
+            // reported below
+        }
+        throw new JsonParseException(parser, parser.getText() + " is not a valid amount of money");
+    }
+
+    static final class Serializer extends JsonSerializer<Money> {
+        @Override
+        public void serialize(Money value, JsonGenerator generator, SerializerProvider serializers)
+                throws IOException {
+            generator.writeNumber(value.toString());
+        }
+    }
+
+    static final class Deserializer extends JsonDeserializer<Money> {
+        @Override
+        public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            try {
+                if (parser.hasToken(JsonToken.VALUE_STRING)) {
+                    return parse(parser.getText().trim());
+                }
+                return of(parser.getDecimalValue());
+            } catch (ArithmeticException | IllegalArgumentException e) {
+                throw context.weirdStringException(parser.getText(), Money.class, "not a valid amount of money");
+            }
+        }
+
+        // a null amount is none at all, as a missing one is, rather than a null reaching the arithmetic
+        @Override
+        public Money getNullValue(DeserializationContext context) {
+            return ZERO;
+        }
+    }
+}
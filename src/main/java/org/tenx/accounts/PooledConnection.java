@@ -0,0 +1,156 @@
+package org.tenx.accounts;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}. Closing it returns it to the pool. Statements handed out
+ * by {@link #prepare(SqlStatement)} are cached for the lifetime of the physical connection and must not be
+ * closed by callers; close the result sets instead. Run them through the execute methods here so each
+ * execution is timed per statement.
+ */
+public class PooledConnection implements AutoCloseable {
+    private final Connection connection;
+    private final ConnectionPool pool;
+    private final BankMetrics metrics;
+    private final Map<SqlStatement, PreparedStatement> statementCache = new EnumMap<>(SqlStatement.class);
+    private Statement transactionControl;
+    private boolean inTransaction;
+
+    PooledConnection(Connection connection, ConnectionPool pool, BankMetrics metrics) {
+        this.connection = connection;
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public PreparedStatement prepare(SqlStatement statement) throws SQLException {
+        PreparedStatement preparedStatement = statementCache.get(statement);
+        if (preparedStatement == null) {
+            preparedStatement = connection.prepareStatement(statement.getQuery());
+            statementCache.put(statement, preparedStatement);
+        }
+        return preparedStatement;
+    }
+
+    public ResultSet executeQuery(SqlStatement statement) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return prepare(statement).executeQuery();
+        } finally {
+            metrics.recordStatement(statement, start);
+        }
+    }
+
+    public int executeUpdate(SqlStatement statement) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return prepare(statement).executeUpdate();
+        } finally {
+            metrics.recordStatement(statement, start);
+        }
+    }
+
+    public int[] executeBatch(SqlStatement statement) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return prepare(statement).executeBatch();
+        } finally {
+            metrics.recordStatement(statement, start);
+        }
+    }
+
+    /**
+     * Starts a write transaction. SQLite's BEGIN IMMEDIATE takes the write lock up front, so two transfers can
+     * never both read a balance and then fail to upgrade to a writer half way through. Transactions are driven
+     * with plain statements rather than {@link Connection#setAutoCommit(boolean)} because the SQLite driver
+     * re-opens a transaction straight after every commit when auto-commit is off.
+     */
+    public void beginImmediate() throws SQLException {
+        long start = System.nanoTime();
+        executeTransactionControl("BEGIN IMMEDIATE");
+        metrics.recordPhase(BankMetrics.TransactionPhase.LOCK_WAIT, start);
+        inTransaction = true;
+    }
+
+    /**
+     * Starts a read transaction. Its first query fixes the snapshot that every later query in it sees, and in WAL
+     * mode holding it open does not block writers.
+     */
+    public void beginRead() throws SQLException {
+        executeTransactionControl("BEGIN DEFERRED");
+        inTransaction = true;
+    }
+
+    public void commit() throws SQLException {
+        if (inTransaction) {
+            long start = System.nanoTime();
+            executeTransactionControl("COMMIT");
+            metrics.recordPhase(BankMetrics.TransactionPhase.COMMIT, start);
+            inTransaction = false;
+        }
+    }
+
+    public void rollback() throws SQLException {
+        if (inTransaction) {
+            inTransaction = false;
+            executeTransactionControl("ROLLBACK");
+        }
+    }
+
+    /**
+     * Marks a point inside the open transaction that {@link #rollbackToSavepoint()} can undo back to, used to run
+     * several transfers in one transaction without one failure discarding the others.
+     */
+    public void savepoint() throws SQLException {
+        executeTransactionControl("SAVEPOINT transfer");
+    }
+
+    public void releaseSavepoint() throws SQLException {
+        executeTransactionControl("RELEASE transfer");
+    }
+
+    public void rollbackToSavepoint() throws SQLException {
+        executeTransactionControl("ROLLBACK TO transfer");
+        executeTransactionControl("RELEASE transfer");
+    }
+
+    private void executeTransactionControl(String command) throws SQLException {
+        if (transactionControl == null) {
+            transactionControl = connection.createStatement();
+        }
+        transactionControl.execute(command);
+    }
+
+    void reset() throws SQLException {
+        rollback();
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    void closePhysical() throws SQLException {
+        if (transactionControl != null) {
+            transactionControl.close();
+        }
+        for (PreparedStatement preparedStatement : statementCache.values()) {
+            preparedStatement.close();
+        }
+        statementCache.clear();
+        connection.close();
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
@@ -0,0 +1,205 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The connections the read endpoints run on, kept apart from the pool transfers and account creation write
+ * through, so a long scan never holds a connection a transfer is waiting for and read throughput grows with
+ * {@code tenx.db.read-pool-size} alone.
+ *
+ * By default the readers are read-only connections to the live DB. In WAL mode each read transaction sees every
+ * write committed before it started, and readers and the writer never block each other.
+ *
+ * With {@code tenx.db.read-snapshot-refresh-millis} set, the readers instead use a copy of the DB taken with
+ * {@code VACUUM INTO} every refresh interval, which takes even the WAL and its checkpoints out of the read path.
+ * Reads are then at most one interval plus the time a copy takes behind the writer. Each copy rewrites the whole
+ * DB, so this only suits a DB that copies well within the interval. Copies are made on a read-only connection of
+ * their own, never one a transfer could be waiting for, and skipped while {@code PRAGMA data_version} shows nothing
+ * was committed since the last one. Each copy gets a new pool; the previous one is retired, each of its
+ * connections closed once it is back however long a streamed read holds it, and its file deleted after the last.
+ */
+public class ReadReplica implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(ReadReplica.class);
+
+    private final DatabaseSettings settings;
+    private final BankMetrics metrics;
+    private final Path directory;
+    private final AtomicLong generation = new AtomicLong();
+    private final List<Runnable> refreshListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    // the connection snapshots are copied through, null when reading the live DB
+    private final Connection snapshotSource;
+
+    private volatile ConnectionPool readers;
+    // null when reading the live DB
+    private volatile Path snapshot;
+    private volatile long snapshotAt;
+    private long snapshotDataVersion;
+
+    public ReadReplica(DatabaseSettings settings, BankMetrics metrics) throws SQLException, IOException {
+        this.settings = settings;
+        this.metrics = metrics;
+        long interval = settings.getReadSnapshotRefreshMillis();
+        if (interval > 0) {
+            directory = Paths.get(settings.getReadSnapshotDirectory());
+            Files.createDirectories(directory);
+            snapshotSource = DriverManager.getConnection(settings.getUrl(),
+                    settings.toReadOnlyConnectionProperties());
+            refresh();
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "read-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::runScheduledRefresh, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            directory = null;
+            scheduler = null;
+            snapshotSource = null;
+            readers = ConnectionPool.readOnly(settings.getUrl(), settings, metrics);
+        }
+
+        Gauge.builder("tenx.db.pool.idle", this, replica -> replica.readers.getIdleCount())
+                .description("Pooled connections not borrowed by any thread")
+                .tag("pool", "read")
+                .register(metrics.getRegistry());
+        Gauge.builder("tenx.db.read.staleness", this, ReadReplica::getStalenessMillis)
+                .description("How far reads may be behind the writer, 0 when reading the live DB")
+                .baseUnit("milliseconds")
+                .register(metrics.getRegistry());
+    }
+
+    private void runScheduledRefresh() {
+        try {
+            refresh();
+        } catch (SQLException | IOException | RuntimeException e) {
+            logger.warn("Refreshing the read snapshot failed, retrying next interval. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Borrows a read-only connection. A borrower that reached a pool just as a newer snapshot retired it moves on
+     * to the new pool.
+     */
+    public PooledConnection borrow() throws SQLException {
+        while (true) {
+            ConnectionPool pool = readers;
+            try {
+                return pool.borrow();
+            } catch (SQLException e) {
+                if (pool == readers) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the live DB into a new snapshot file and moves the readers over to it. The copy is one read
+     * transaction, so transfers carry on while it runs.
+     *
+     * @return false if nothing was committed since the last copy, which then stays in use
+     */
+    synchronized boolean refresh() throws SQLException, IOException {
+        long takenAt = Timestamps.now();
+        long dataVersion = readDataVersion();
+        if (snapshot != null && dataVersion == snapshotDataVersion) {
+            snapshotAt = takenAt;
+            return false;
+        }
+        Path next = directory.resolve("10xBank-" + generation.incrementAndGet() + ".db");
+        // VACUUM INTO refuses to overwrite, a previous process may have left one behind
+        Files.deleteIfExists(next);
+        try (PreparedStatement statement = snapshotSource.prepareStatement(SqlStatement.SNAPSHOT_INTO.getQuery())) {
+            statement.setString(1, next.toString());
+            statement.executeUpdate();
+        }
+        snapshotDataVersion = dataVersion;
+
+        ConnectionPool previousReaders = readers;
+        Path previous = snapshot;
+        readers = ConnectionPool.readOnly("jdbc:sqlite:" + next, settings, metrics);
+        snapshot = next;
+        snapshotAt = takenAt;
+        if (previousReaders != null) {
+            previousReaders.retire(() -> deleteSnapshot(previous));
+        }
+        refreshListeners.forEach(Runnable::run);
+        return true;
+    }
+
+    /**
+     * SQLite moves this on whenever another connection commits, and this one never writes. Read before the copy,
+     * so a commit landing during it makes the next refresh copy again.
+     */
+    private long readDataVersion() throws SQLException {
+        try (Statement statement = snapshotSource.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA data_version")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Runs the listener after every refresh, once new borrowers get the new snapshot.
+     */
+    public void addRefreshListener(Runnable listener) {
+        refreshListeners.add(listener);
+    }
+
+    private void deleteSnapshot(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete the read snapshot {}. {}", file, e.getMessage());
+        }
+    }
+
+    public long getStalenessMillis() {
+        return snapshot == null ? 0 : Math.max(0, Timestamps.now() - snapshotAt);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (readers != null) {
+            readers.close();
+        }
+        if (snapshotSource != null) {
+            try {
+                snapshotSource.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close the read snapshot source connection. {}", e.getMessage());
+            }
+        }
+        if (snapshot != null) {
+            deleteSnapshot(snapshot);
+        }
+    }
+}
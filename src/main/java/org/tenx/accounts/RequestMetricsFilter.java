@@ -0,0 +1,81 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gauge of HTTP requests being served right now. Actuator already times every request as
+ * {@code http.server.requests}; this shows how many are queued up behind a slow one. Store backed endpoints answer
+ * asynchronously, so such a request only stops counting once its async processing completes, errors or times out.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public RequestMetricsFilter(MeterRegistry registry) {
+        Gauge.builder("tenx.http.in_flight", inFlight, AtomicInteger::get)
+                .description("HTTP requests currently being served")
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        inFlight.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new InFlightListener());
+            } else {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Counts an async request out once, whichever of complete, error or timeout arrives first.
+     */
+    private final class InFlightListener implements AsyncListener {
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a re-started async cycle keeps the request in flight, and this listener must hear how it ends
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.Function;
+
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Brings a 10X bank DB file up to the current schema. The version a file is at is kept in SQLite's
+ * {@code PRAGMA user_version}; every script in {@link #MIGRATIONS} above that version is applied in order, each
+ * in its own transaction together with the version bump. Files created before migrations existed report version
+ * 0, and V1 only creates what is missing, so they are upgraded in place.
+ *
+ * Add new scripts to the end of the list, never edit one that has shipped.
+ */
+public class SchemaMigrator {
+    private static final String[] MIGRATIONS = {
+            "migrations/V1__create_tables.sql",
+            "migrations/V2__keys_and_indexes.sql",
+            "migrations/V3__minor_unit_amounts.sql",
+            "migrations/V4__epoch_millis_timestamps.sql",
+            "migrations/V5__transaction_history_indexes.sql",
+            "migrations/V6__ledger_reconciliation.sql",
+            "migrations/V7__settled_amounts.sql",
+            "migrations/V8__idempotency_keys.sql"
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+    private final Connection connection;
+
+    public SchemaMigrator(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    public void migrate() throws SQLException {
+        registerFunctions();
+        try (Statement statement = connection.createStatement()) {
+            for (int version = 1; version <= MIGRATIONS.length; version++) {
+                statement.execute("BEGIN IMMEDIATE");
+                try {
+                    // re-read under the write lock in case another process migrated the file meanwhile
+                    if (getCurrentVersion(statement) < version) {
+                        logger.info("Applying schema migration {}", MIGRATIONS[version - 1]);
+                        applyScript(statement, SqlStatement.loadFromClasspath(MIGRATIONS[version - 1]));
+                        statement.execute("PRAGMA user_version = " + version);
+                    }
+                    statement.execute("COMMIT");
+                } catch (SQLException e) {
+                    statement.execute("ROLLBACK");
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public int getCurrentVersion() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            return getCurrentVersion(statement);
+        }
+    }
+
+    private int getCurrentVersion(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * SQL functions the scripts may call. {@code rescale_minor_units(amount, fromCurrency, toCurrency)} converts a
+     * ledger amount written before transfers could change currency to minor units of an account's currency.
+     * {@code exponent_of(currency)} is {@link Money#exponentOf}, so scripts never keep a currency table of their own.
+     * {@code abort_migration(message)} fails the migration with the message, for data it cannot carry over.
+     */
+    private void registerFunctions() throws SQLException {
+        Function.create(connection, "exponent_of", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(Money.exponentOf(value_text(0)));
+            }
+        });
+        Function.create(connection, "abort_migration", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                error(value_text(0));
+            }
+        });
+        Function.create(connection, "rescale_minor_units", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                try {
+                    result(toAccountUnits(value_long(0), Money.exponentOf(value_text(1)), value_text(2)));
+                } catch (ArithmeticException e) {
+                    error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Those transfers were only applied when the amount was exact in both accounts' currencies, so anything finer
+     * can only come from bad data. It is truncated and left for the {@link LedgerReconciler} to report rather than
+     * failing the migration.
+     */
+    static long toAccountUnits(long amount, int exponent, String accountCurrency) {
+        int accountExponent = Money.exponentOf(accountCurrency);
+        try {
+            return Money.rescale(amount, exponent, accountExponent);
+        } catch (ArithmeticException e) {
+            return Money.ofMinorUnits(amount, exponent).toBigDecimal().setScale(accountExponent, RoundingMode.DOWN)
+                    .unscaledValue().longValueExact();
+        }
+    }
+
+    private void applyScript(Statement statement, String script) throws SQLException {
+        for (String query : script.split(";")) {
+            if (!query.isBlank()) {
+                statement.execute(query);
+            }
+        }
+    }
+}
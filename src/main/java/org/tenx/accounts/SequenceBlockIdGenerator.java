@@ -0,0 +1,87 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence persisted in the {@code sequences} table. Rather than touching the DB for every transfer, a block of
+ * IDs is reserved (and committed) in one go and then handed out from an {@link AtomicLong}. Only the thread
+ * that drains a block goes back to the DB, so the common path is a single atomic increment. A crash loses at
+ * most the unused part of the current block, it never causes an ID to be reused.
+ */
+public class SequenceBlockIdGenerator implements TransactionIdGenerator {
+    private static final String TRANSACTIONS_SEQUENCE = "transactions";
+    private static final Block EMPTY_BLOCK = new Block(0, 0);
+
+    private final Logger logger = LoggerFactory.getLogger(SequenceBlockIdGenerator.class);
+    private final ConnectionPool connectionPool;
+    private final int blockSize;
+    private volatile Block currentBlock = EMPTY_BLOCK;
+
+    public SequenceBlockIdGenerator(ConnectionPool connectionPool, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1 but was " + blockSize);
+        }
+        this.connectionPool = connectionPool;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId() throws SQLException {
+        while (true) {
+            Block block = currentBlock;
+            long id = block.next.getAndIncrement();
+            if (id < block.limit) {
+                return id;
+            }
+            synchronized (this) {
+                if (currentBlock == block) {
+                    currentBlock = reserveBlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        currentBlock = EMPTY_BLOCK;
+    }
+
+    private Block reserveBlock() throws SQLException {
+        try (PooledConnection conn = connectionPool.borrow()) {
+            conn.beginImmediate();
+            PreparedStatement retrieval = conn.prepare(SqlStatement.SEQUENCE_RETRIEVAL);
+            retrieval.setString(1, TRANSACTIONS_SEQUENCE);
+            long start;
+            try (ResultSet rs = conn.executeQuery(SqlStatement.SEQUENCE_RETRIEVAL)) {
+                if (!rs.next()) {
+                    throw new SQLException("Sequence " + TRANSACTIONS_SEQUENCE + " has not been initialised");
+                }
+                start = rs.getLong("nextValue");
+            }
+            PreparedStatement update = conn.prepare(SqlStatement.SEQUENCE_UPDATE);
+            update.setLong(1, start + blockSize);
+            update.setString(2, TRANSACTIONS_SEQUENCE);
+            conn.executeUpdate(SqlStatement.SEQUENCE_UPDATE);
+            conn.commit();
+
+            logger.debug("Reserved transaction IDs [{}, {})", start, start + blockSize);
+            return new Block(start, start + blockSize);
+        }
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long limit;
+
+        private Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
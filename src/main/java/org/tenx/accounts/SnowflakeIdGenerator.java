@@ -0,0 +1,56 @@
+package org.tenx.accounts;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake style IDs: 41 bits of milliseconds since {@link #EPOCH_MILLIS}, 10 bits of node ID and a 12 bit
+ * per-millisecond counter. Needs no DB access, so several nodes can share a ledger as long as each one is
+ * configured with its own node ID. The last issued timestamp and counter are packed into one {@link AtomicLong}
+ * and advanced with compare-and-set. When a millisecond's counter is exhausted, or the wall clock goes
+ * backwards, the generator moves on to the next millisecond instead of waiting, so IDs stay unique and
+ * increasing.
+ */
+public class SnowflakeIdGenerator implements TransactionIdGenerator {
+    static final long EPOCH_MILLIS = 1609459200000L; // 2021-01-01T00:00:00Z
+    static final int NODE_ID_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_ID_BITS) - 1;
+    static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    public SnowflakeIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID + " but was " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long last = lastTimestampAndSequence.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long lastSequence = last & MAX_SEQUENCE;
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+
+            long timestamp;
+            long sequence;
+            if (now > lastTimestamp) {
+                timestamp = now;
+                sequence = 0;
+            } else if (lastSequence < MAX_SEQUENCE) {
+                timestamp = lastTimestamp;
+                sequence = lastSequence + 1;
+            } else {
+                timestamp = lastTimestamp + 1;
+                sequence = 0;
+            }
+
+            if (lastTimestampAndSequence.compareAndSet(last, (timestamp << SEQUENCE_BITS) | sequence)) {
+                return (timestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.tenx.accounts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Registry of every SQL statement used by the bank outside of schema migrations, see {@link SchemaMigrator}.
+ * Each statement is read once from the classpath when this class is initialised, so no query text is loaded from
+ * disk while a request is being served and the packaged jar no longer depends on the source tree being present.
+ */
+public enum SqlStatement {
+    ACCOUNT_RETRIEVAL("AccountRetrieval.sql"),
+    RETRIEVE_ALL_ACCOUNT_DETAILS("RetrieveAllAccountDetails.sql"),
+    ACCOUNT_PAGE_RETRIEVAL("AccountPageRetrieval.sql"),
+    ADD_ACCOUNT_ENTRY("AddAccountEntry.sql"),
+    IMPORT_ACCOUNT_ENTRY("ImportAccountEntry.sql"),
+    UPDATE_ACCOUNT_ENTRY("UpdateAccountEntry.sql"),
+    DEBIT_ACCOUNT_ENTRY("DebitAccountEntry.sql"),
+    TABLE_COUNT_QUERY("TableCountQuery.sql"),
+    UPDATE_TRANSACTION_HISTORY_QUERY("UpdateTransactionHistoryQuery.sql"),
+    TRANSACTION_HISTORY("TransactionHistory.sql"),
+    TRANSACTION_RETRIEVAL("TransactionRetrieval.sql"),
+    IDEMPOTENCY_KEY_RETRIEVAL("IdempotencyKeyRetrieval.sql"),
+    LEDGER_CHUNK("LedgerChunk.sql"),
+    LEDGER_CHECKPOINT_RETRIEVAL("LedgerCheckpointRetrieval.sql"),
+    LEDGER_CHECKPOINT_UPDATE("LedgerCheckpointUpdate.sql"),
+    LEDGER_CHECKPOINT_CLEAR("LedgerCheckpointClear.sql"),
+    LEDGER_POSITION_RETRIEVAL("LedgerPositionRetrieval.sql"),
+    LEDGER_POSITION_UPDATE("LedgerPositionUpdate.sql"),
+    LEDGER_POSITION_RESET("LedgerPositionReset.sql"),
+    LEDGER_END_RETRIEVAL("LedgerEndRetrieval.sql"),
+    LEDGER_ARCHIVE_CHUNK("LedgerArchiveChunk.sql"),
+    LEDGER_ARCHIVE_DELETE("LedgerArchiveDelete.sql"),
+    TABLE_SCHEMA_RETRIEVAL("TableSchemaRetrieval.sql"),
+    SNAPSHOT_INTO("SnapshotInto.sql"),
+    ACCOUNT_RECONCILIATION_RETRIEVAL("AccountReconciliationRetrieval.sql"),
+    ALL_ACCOUNTS_RECONCILIATION("AllAccountsReconciliation.sql"),
+    OPENING_BALANCE_RESET("OpeningBalanceReset.sql"),
+    SEQUENCE_RETRIEVAL("SequenceRetrieval.sql"),
+    SEQUENCE_UPDATE("SequenceUpdate.sql");
+
+    private static final String SQL_RESOURCE_DIRECTORY = "/sql/";
+
+    private final String fileName;
+    private final String query;
+
+    SqlStatement(String fileName) {
+        this.fileName = fileName;
+        this.query = loadFromClasspath(fileName);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    static String loadFromClasspath(String fileName) {
+        String resource = SQL_RESOURCE_DIRECTORY + fileName;
+        try (InputStream in = SqlStatement.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("SQL resource " + resource + " not found on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read SQL resource " + resource, e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking store calls on a fixed number of threads behind a bounded queue, so the web server's request
+ * threads hand a call over and go back to accepting connections instead of waiting on JDBC. When the queue is
+ * full a call is refused straight away with a {@link RejectedExecutionException}, which the controller turns into
+ * a 429, rather than queuing without bound while SQLite is busy.
+ *
+ * When disabled calls run on the caller's thread and nothing is refused.
+ */
+public class StoreExecutor implements Executor, AutoCloseable {
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+
+    public StoreExecutor(ExecutorSettings settings, MeterRegistry registry) {
+        rejected = Counter.builder("tenx.executor.rejected")
+                .description("Store calls refused because the executor queue was full")
+                .register(registry);
+        if (!settings.isEnabled()) {
+            executor = null;
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "store-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Store executor queue is full");
+                });
+        Gauge.builder("tenx.executor.queued", executor, pool -> pool.getQueue().size())
+                .description("Store calls waiting for an executor thread")
+                .register(registry);
+        Gauge.builder("tenx.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Store calls running on executor threads")
+                .register(registry);
+    }
+
+    /**
+     * @return a future completed with the call's result, or exceptionally with whatever it threw
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (executor == null) {
+            command.run();
+        } else {
+            executor.execute(command);
+        }
+    }
+
+    /**
+     * Stops taking calls and waits for the queued ones to finish, so they still see an open store. An interrupted
+     * caller stops waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
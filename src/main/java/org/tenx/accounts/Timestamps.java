@@ -0,0 +1,111 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Timestamps are epoch milliseconds everywhere inside the bank, in memory, in the journal and as INTEGER columns,
+ * and only become {@code yyyy-MM-dd HH:mm:ss} text in the server's time zone at the JSON edge. Requests may send
+ * either form.
+ */
+public final class Timestamps {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZONE);
+
+    // accounts listed together were mostly created in the same second, so remember the last one formatted
+    private static volatile FormattedSecond lastFormatted = new FormattedSecond(Long.MIN_VALUE, "");
+    // and accounts imported together mostly carry the same second as text
+    private static volatile FormattedSecond lastParsed = new FormattedSecond(0, FORMAT.format(Instant.EPOCH));
+
+    private Timestamps() {
+    }
+
+    public static long now() {
+        return System.currentTimeMillis();
+    }
+
+    public static String format(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000);
+        FormattedSecond last = lastFormatted;
+        if (last.second == second) {
+            return last.text;
+        }
+        String text = FORMAT.format(Instant.ofEpochSecond(second));
+        lastFormatted = new FormattedSecond(second, text);
+        return text;
+    }
+
+    /**
+     * @throws DateTimeParseException if the text is not {@code yyyy-MM-dd HH:mm:ss}
+     */
+    public static long parse(String text) {
+        String trimmed = text.trim();
+        FormattedSecond last = lastParsed;
+        if (last.text.equals(trimmed)) {
+            return last.second * 1000;
+        }
+        long second = LocalDateTime.parse(trimmed, FORMAT).atZone(ZONE).toEpochSecond();
+        lastParsed = new FormattedSecond(second, trimmed);
+        return second * 1000;
+    }
+
+    /**
+     * Reads a timestamp at the parser's current token, epoch milliseconds or formatted text, for the streaming
+     * codecs. A JSON null reads as the current time.
+     */
+    static long read(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return now();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            try {
+                return parse(parser.getText());
+            } catch (DateTimeParseException e) {
+                // reported below
+            }
+        }
+        throw new JsonParseException(parser, parser.getText() + " is not a valid timestamp");
+    }
+
+    private static final class FormattedSecond {
+        private final long second;
+        private final String text;
+
+        private FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    static final class Serializer extends JsonSerializer<Long> {
+        @Override
+        public void serialize(Long value, JsonGenerator generator, SerializerProvider serializers)
+                throws IOException {
+            generator.writeString(format(value));
+        }
+    }
+
+    static final class Deserializer extends JsonDeserializer<Long> {
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return read(parser);
+        }
+    }
+}
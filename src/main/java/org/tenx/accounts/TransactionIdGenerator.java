@@ -0,0 +1,31 @@
+package org.tenx.accounts;
+
+import java.sql.SQLException;
+
+/**
+ * Hands out transaction IDs. Implementations must be safe to call from many request threads at once and must
+ * never return the same ID twice. IDs are unique but not necessarily dense: a transfer that fails validation
+ * still consumes the ID it was given.
+ */
+public interface TransactionIdGenerator {
+
+    long nextId() throws SQLException;
+
+    /**
+     * Called after the transactions table has been cleared so numbering can start again.
+     */
+    default void reset() {
+    }
+
+    static TransactionIdGenerator create(DatabaseSettings settings, ConnectionPool connectionPool) {
+        String generator = settings.getTransactionIdGenerator();
+        if (generator.equalsIgnoreCase("sequence")) {
+            return new SequenceBlockIdGenerator(connectionPool, settings.getTransactionIdBlockSize());
+        } else if (generator.equalsIgnoreCase("snowflake")) {
+            return new SnowflakeIdGenerator(settings.getNodeId());
+        } else {
+            throw new IllegalArgumentException("Unknown transaction ID generator " + generator +
+                    ". Use either [sequence] or [snowflake]");
+        }
+    }
+}
@@ -1,23 +1,17 @@
 package org.tenx.accounts;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 public class Transfer {
     private long id; //don't really need this as the transaction ID should be created at runtime
     private long sourceAccountId;
     private long destinationAccountId;
-    private double amount;
+    private Money amount = Money.ZERO;
     private String currency;
-    private String createdAt;
-
-
-    public Transfer(){
-        final DateTimeFormatter dbTimeStampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        createdAt = LocalDateTime.now().format(dbTimeStampFormat);
-    }
+    private long createdAt = Timestamps.now(); // epoch milliseconds
+    private String idempotencyKey; // from the Idempotency-Key header, null when the client sent none
 
     @JsonIgnore
     public long getId() { return id; }
@@ -33,16 +27,24 @@ public class Transfer {
 
     public void setDestinationAccountId(long destinationAccountId) { this.destinationAccountId = destinationAccountId; }
 
-    public double getAmount() { return amount; }
+    public Money getAmount() { return amount; }
 
-    public void setAmount(double amount) { this.amount = amount; }
+    public void setAmount(Money amount) { this.amount = amount; }
 
     public String getCurrency() { return currency; }
 
     public void setCurrency(String currency) { this.currency = currency; }
 
 
-    public String getCreatedAt() { return createdAt; }
+    @JsonSerialize(using = Timestamps.Serializer.class)
+    public long getCreatedAt() { return createdAt; }
+
+    @JsonDeserialize(using = Timestamps.Deserializer.class)
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
 
-    public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
+    @JsonIgnore
+    public String getIdempotencyKey() { return idempotencyKey; }
+
+    @JsonIgnore
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
 }
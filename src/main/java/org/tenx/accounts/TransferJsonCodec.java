@@ -0,0 +1,113 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads transfer requests straight from the request body with a streaming parser, field by field into a
+ * {@link Transfer}, and writes batch results as a JSON array of strings. The transfer ID in a request is ignored,
+ * as it was with data binding, since IDs are assigned by the engine.
+ */
+public final class TransferJsonCodec {
+
+    private TransferJsonCodec() {
+    }
+
+    public static Transfer readTransfer(InputStream in) throws IOException {
+        try (JsonParser parser = AccountJsonCodec.createParser(in)) {
+            AccountJsonCodec.startObject(parser, parser.nextToken());
+            return readFields(parser);
+        }
+    }
+
+    /**
+     * Reads either a JSON array of transfers or a sequence of transfer objects, such as newline delimited JSON.
+     */
+    public static List<Transfer> readTransfers(InputStream in) throws IOException {
+        List<Transfer> transfers = new ArrayList<>();
+        try (JsonParser parser = AccountJsonCodec.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    AccountJsonCodec.startObject(parser, token);
+                    transfers.add(readFields(parser));
+                }
+            } else {
+                while (token != null) {
+                    AccountJsonCodec.startObject(parser, token);
+                    transfers.add(readFields(parser));
+                    token = parser.nextToken();
+                }
+            }
+        }
+        return transfers;
+    }
+
+    public static byte[] writeResults(List<String> results) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * results.size() + 2);
+        try (JsonGenerator generator = AccountJsonCodec.createGenerator(out)) {
+            generator.writeStartArray();
+            for (String result : results) {
+                generator.writeString(result);
+            }
+            generator.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes one entry of the transactions table, the amount in the transfer currency's minor units.
+     */
+    public static void writeTransaction(JsonGenerator generator, long transactionId, String type,
+                                        long sourceAccountId, long destinationAccountId, long amountMinorUnits,
+                                        String currency, long createdAt) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("transactionId", transactionId);
+        generator.writeStringField("type", type);
+        generator.writeNumberField("sourceAccountId", sourceAccountId);
+        generator.writeNumberField("destinationAccountId", destinationAccountId);
+        generator.writeFieldName("amount");
+        generator.writeNumber(Money.format(amountMinorUnits, Money.exponentOf(currency)));
+        generator.writeStringField("currency", currency);
+        generator.writeStringField("createdAt", Timestamps.format(createdAt));
+        generator.writeEndObject();
+    }
+
+    private static Transfer readFields(JsonParser parser) throws IOException {
+        Transfer transfer = new Transfer();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    parser.skipChildren();
+                    break;
+                case "sourceAccountId":
+                    transfer.setSourceAccountId(AccountJsonCodec.readLong(parser));
+                    break;
+                case "destinationAccountId":
+                    transfer.setDestinationAccountId(AccountJsonCodec.readLong(parser));
+                    break;
+                case "amount":
+                    transfer.setAmount(Money.read(parser));
+                    break;
+                case "currency":
+                    transfer.setCurrency(AccountJsonCodec.readString(parser));
+                    break;
+                case "createdAt":
+                    transfer.setCreatedAt(Timestamps.read(parser));
+                    break;
+                default:
+                    throw AccountJsonCodec.unknownField(parser, field);
+            }
+        }
+        return transfer;
+    }
+}
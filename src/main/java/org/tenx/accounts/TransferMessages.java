@@ -0,0 +1,99 @@
+package org.tenx.accounts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response strings for {@link AccountStore#handleTransaction(Transfer)} and the account import, shared by every
+ * storage engine.
+ */
+public final class TransferMessages {
+
+    private TransferMessages() {
+    }
+
+    public static String successful(long transactionId) {
+        return "Transaction successful. Transaction ID [" + transactionId + "]";
+    }
+
+    public static String insufficientBalance() {
+        return "The source balance is insufficient for this transaction";
+    }
+
+    public static String invalidAmount(Money amount, String currency) {
+        return "The amount " + amount + " cannot be represented in " + currency + ". Please review the amount";
+    }
+
+    public static String noExchangeRate(String fromCurrency, String toCurrency) {
+        return "No exchange rate from " + fromCurrency + " to " + toCurrency + ". Please review the currency";
+    }
+
+    public static String imported(long count) {
+        return "Imported " + count + " accounts";
+    }
+
+    /**
+     * An all-or-nothing import rejected for an account whose ID is taken, by an existing account or an earlier one
+     * in the same import.
+     */
+    public static String importDuplicate(long accountId) {
+        return "Account " + accountId + " already exists. No accounts were imported";
+    }
+
+    public static String importInvalidBalance(long accountId, Money balance, String currency) {
+        return "The balance " + balance + " of account " + accountId + " cannot be represented in " + currency +
+                ". No accounts were imported";
+    }
+
+    public static String accountError(long sourceAccountId, long destinationAccountId,
+                                      boolean sourceAccExists, boolean destinationAccExists,
+                                      boolean sourceAndDestinationDiffer) {
+        if (!sourceAndDestinationDiffer) {
+            return "Account ID's " + destinationAccountId + " and " + sourceAccountId + " are the same. " +
+                    "Please correct either the source or destination account";
+        } else if (sourceAccExists) {
+            return "Account ID " + destinationAccountId + " not found. Please review the destination account ID.";
+        } else if (destinationAccExists) {
+            return "Account ID " + sourceAccountId + " not found. Please review the source account ID.";
+        } else {
+            return "Account ID's " + destinationAccountId + " and " + sourceAccountId + " not found. Please verify" +
+                    " both account ID's";
+        }
+    }
+
+    /**
+     * Maps a transfer result back to the message it was built from, for metrics.
+     */
+    public static BankMetrics.Outcome outcomeOf(String result) {
+        if (result.startsWith("Transaction successful.")) {
+            return BankMetrics.Outcome.SUCCESS;
+        } else if (result.equals(insufficientBalance())) {
+            return BankMetrics.Outcome.INSUFFICIENT_FUNDS;
+        } else if (result.endsWith("Please correct either the source or destination account")) {
+            return BankMetrics.Outcome.SAME_ACCOUNT;
+        } else if (result.startsWith("Account ID")) {
+            return BankMetrics.Outcome.NOT_FOUND;
+        } else if (result.startsWith("The amount ")) {
+            return BankMetrics.Outcome.INVALID_AMOUNT;
+        } else if (result.startsWith("No exchange rate ")) {
+            return BankMetrics.Outcome.NO_EXCHANGE_RATE;
+        } else if (result.startsWith("Transfer not applied.")) {
+            return BankMetrics.Outcome.ROLLED_BACK;
+        } else {
+            return BankMetrics.Outcome.ERROR;
+        }
+    }
+
+    /**
+     * Results for an all-or-nothing batch that was rolled back: the failed transfer keeps its own message and
+     * every other transfer reports that it was not applied.
+     */
+    public static List<String> batchRolledBack(int batchSize, int failedIndex, String failure) {
+        List<String> results = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            results.add(i == failedIndex ? failure :
+                    "Transfer not applied. The batch was rolled back because transfer " + failedIndex + " failed");
+        }
+        return results;
+    }
+}
@@ -0,0 +1,147 @@
+package org.tenx.accounts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-writer partitions for account balances. Every account belongs to one shard by its ID, and each shard is
+ * one thread draining its own queue, so work queued for a shard runs one task at a time without any locks. Tasks
+ * never block on another shard; a transfer between two shards is handed from one queue to the other.
+ *
+ * Work that has to see several shards standing still, such as an all-or-nothing batch, pauses them with
+ * {@link #pause(long[])}.
+ */
+public class TransferShards implements AutoCloseable {
+    private static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Logger logger = LoggerFactory.getLogger(TransferShards.class);
+
+    private final List<BlockingQueue<Runnable>> queues;
+    private final Thread[] workers;
+    private final long closeTimeoutMillis;
+
+    public TransferShards(int shardCount) {
+        this(shardCount, DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    TransferShards(int shardCount, long closeTimeoutMillis) {
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        queues = new ArrayList<>(shardCount);
+        workers = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+            queues.add(queue);
+            workers[i] = new Thread(() -> drain(queue), "transfer-shard-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int shardOf(long accountId) {
+        return Math.floorMod(Long.hashCode(accountId), queues.size());
+    }
+
+    /**
+     * Queues the task on the shard that owns the account.
+     */
+    public void execute(long accountId, Runnable task) {
+        queues.get(shardOf(accountId)).add(task);
+    }
+
+    /**
+     * Stops the shards owning the given accounts once they finish the tasks already queued, taking them in
+     * ascending order so two callers pausing overlapping shards cannot wait on each other. Tasks queued meanwhile
+     * run after {@link Pause#close()}.
+     */
+    public Pause pause(long[] accountIds) throws InterruptedException {
+        int[] shards = Arrays.stream(accountIds).mapToInt(this::shardOf).distinct().sorted().toArray();
+        Pause pause = new Pause();
+        try {
+            for (int shard : shards) {
+                CountDownLatch parked = new CountDownLatch(1);
+                queues.get(shard).add(() -> {
+                    parked.countDown();
+                    pause.awaitRelease();
+                });
+                parked.await();
+            }
+        } catch (InterruptedException e) {
+            pause.close();
+            throw e;
+        }
+        return pause;
+    }
+
+    private void drain(BlockingQueue<Runnable> queue) {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Transfer shard task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Lets the queued tasks finish, then stops the shard threads. Callers must have stopped queuing transfers. A
+     * shard still busy or paused after five seconds is logged and left behind; the threads are
+     * daemons, so it cannot keep the JVM up. An interrupted caller stops waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < queues.size(); i++) {
+            Thread worker = workers[i];
+            queues.get(i).add(worker::interrupt);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMillis);
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                if (workers[i].isAlive()) {
+                    logger.warn("{} did not stop within {} ms, {} tasks still queued", workers[i].getName(),
+                            closeTimeoutMillis, queues.get(i).size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Pause implements AutoCloseable {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private void awaitRelease() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1 @@
+select * from accounts where id > ? order by id limit ?
\ No newline at end of file
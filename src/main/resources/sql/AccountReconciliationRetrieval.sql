@@ -0,0 +1 @@
+select balance, openingBalance, currency from accounts where id = ?
\ No newline at end of file
@@ -1 +1 @@
-INSERT INTO accounts VALUES (?,?,?,?)
\ No newline at end of file
+INSERT INTO accounts (id, balance, currency, createdAt, openingBalance) VALUES (?,?,?,?,?)
\ No newline at end of file
@@ -0,0 +1 @@
+select id, balance, openingBalance, currency from accounts
\ No newline at end of file
@@ -0,0 +1 @@
+update accounts set balance = ? where id = ? and balance >= ?
\ No newline at end of file
@@ -0,0 +1,3 @@
+select t.transactionId, t.sourceId, t.destinationId, t.amount, t.currency, a.currency as sourceCurrency
+from transactions t left join accounts a on a.id = t.sourceId
+where t.idempotencyKey = ?
\ No newline at end of file
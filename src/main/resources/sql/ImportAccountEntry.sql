@@ -0,0 +1 @@
+INSERT OR IGNORE INTO accounts (id, balance, currency, createdAt, openingBalance) VALUES (?,?,?,?,?)
\ No newline at end of file
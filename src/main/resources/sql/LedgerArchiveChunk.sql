@@ -0,0 +1,5 @@
+select rowid as position, *
+from transactions
+where rowid > ? and rowid <= ? and createdAt < ?
+order by rowid
+limit ?
\ No newline at end of file
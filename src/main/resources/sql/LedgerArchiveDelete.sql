@@ -0,0 +1 @@
+delete from transactions where rowid > ? and rowid <= ? and createdAt < ?
\ No newline at end of file
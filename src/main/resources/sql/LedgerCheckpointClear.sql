@@ -0,0 +1 @@
+delete from ledger_checkpoints
\ No newline at end of file
@@ -0,0 +1 @@
+select accountId, netFlow from ledger_checkpoints
\ No newline at end of file
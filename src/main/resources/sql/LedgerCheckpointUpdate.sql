@@ -0,0 +1 @@
+insert or replace into ledger_checkpoints (accountId, netFlow) values (?, ?)
\ No newline at end of file
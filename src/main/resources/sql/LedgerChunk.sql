@@ -0,0 +1,5 @@
+select rowid as position, sourceId, destinationId, sourceAmount, destinationAmount
+from transactions
+where rowid > ?
+order by rowid
+limit ?
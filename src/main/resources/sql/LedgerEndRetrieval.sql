@@ -0,0 +1 @@
+select coalesce(max(rowid), 0) as lastRowid from transactions
\ No newline at end of file
@@ -0,0 +1 @@
+update ledger_checkpoint_position set lastRowid = (select coalesce(max(rowid), 0) from transactions) where id = 0
\ No newline at end of file
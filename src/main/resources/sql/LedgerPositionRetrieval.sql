@@ -0,0 +1 @@
+select lastRowid from ledger_checkpoint_position where id = 0
\ No newline at end of file
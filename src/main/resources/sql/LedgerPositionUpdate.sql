@@ -0,0 +1 @@
+update ledger_checkpoint_position set lastRowid = ? where id = 0
\ No newline at end of file
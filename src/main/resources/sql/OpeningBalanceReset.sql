@@ -0,0 +1 @@
+update accounts set openingBalance = balance
\ No newline at end of file
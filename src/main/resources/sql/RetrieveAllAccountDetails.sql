@@ -1 +1 @@
-select * from accounts;
\ No newline at end of file
+select * from accounts order by id
\ No newline at end of file
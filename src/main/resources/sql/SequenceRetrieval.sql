@@ -0,0 +1 @@
+select nextValue from sequences where name = ?
\ No newline at end of file
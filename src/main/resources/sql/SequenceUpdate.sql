@@ -0,0 +1 @@
+update sequences set nextValue = ? where name = ?
\ No newline at end of file
@@ -0,0 +1 @@
+vacuum into ?
\ No newline at end of file
@@ -1 +1 @@
-select count(*) as rowcount from accounts where id =
\ No newline at end of file
+select count(*) as rowcount from accounts where id = ?
\ No newline at end of file
@@ -0,0 +1 @@
+select sql from sqlite_master where tbl_name = ? and sql is not null order by type = 'table' desc
\ No newline at end of file
@@ -0,0 +1,12 @@
+select * from (
+    select transactionId, type, sourceId, destinationId, amount, currency, createdAt from transactions
+    where sourceId = ?1 and createdAt >= ?2 and createdAt < ?3
+      and createdAt <= ?4 and (createdAt < ?4 or transactionId < ?5)
+    order by createdAt desc, transactionId desc limit ?6)
+union all
+select * from (
+    select transactionId, type, sourceId, destinationId, amount, currency, createdAt from transactions
+    where destinationId = ?1 and createdAt >= ?2 and createdAt < ?3
+      and createdAt <= ?4 and (createdAt < ?4 or transactionId < ?5)
+    order by createdAt desc, transactionId desc limit ?6)
+order by createdAt desc, transactionId desc limit ?6
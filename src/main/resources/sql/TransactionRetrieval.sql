@@ -0,0 +1 @@
+select transactionId, type, sourceId, destinationId, amount, currency, createdAt from transactions where transactionId = ?
\ No newline at end of file
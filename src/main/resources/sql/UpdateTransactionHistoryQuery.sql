@@ -1 +1 @@
-INSERT INTO transactions VALUES (?,?,?,?,?,?,?)
\ No newline at end of file
+INSERT INTO transactions (transactionId, amount, type, sourceId, destinationId, currency, createdAt, sourceAmount, destinationAmount, idempotencyKey) VALUES (?,?,?,?,?,?,?,?,?,?)
\ No newline at end of file
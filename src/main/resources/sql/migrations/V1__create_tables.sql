@@ -0,0 +1,23 @@
+CREATE table IF NOT EXISTS accounts (
+    id BIGINT,
+    balance DECIMAL(15,2),
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+create table IF not exists transactions (
+    transactionId BIGINT,
+    amount DECIMAL(15,2),
+    type VARCHAR(10),
+    sourceId BIGINT,
+    destinationId BIGINT,
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+CREATE table IF NOT EXISTS sequences (
+    name VARCHAR(32) PRIMARY KEY,
+    nextValue BIGINT NOT NULL
+    );
+
+INSERT OR IGNORE INTO sequences VALUES ('transactions', 1);
@@ -0,0 +1,41 @@
+CREATE table accounts_v2 (
+    id BIGINT NOT NULL PRIMARY KEY,
+    balance DECIMAL(15,2),
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+SELECT abort_migration(conflicts || ' account IDs are shared by more than one account, give each its own ID first')
+    FROM (SELECT count(*) AS conflicts FROM (SELECT id FROM accounts GROUP BY id HAVING count(*) > 1))
+    WHERE conflicts > 0;
+
+INSERT INTO accounts_v2 SELECT id, balance, currency, createdAt FROM accounts ORDER BY rowid;
+DROP TABLE accounts;
+ALTER TABLE accounts_v2 RENAME TO accounts;
+
+create table transactions_v2 (
+    transactionId BIGINT NOT NULL PRIMARY KEY,
+    amount DECIMAL(15,2),
+    type VARCHAR(10),
+    sourceId BIGINT,
+    destinationId BIGINT,
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+-- IDs were once taken from count(*), so concurrent transfers could share one. The first keeps it, the others are
+-- renumbered past the highest ID by their rowid, which no other row can have
+INSERT INTO transactions_v2
+    SELECT CASE WHEN rowid IN (SELECT min(rowid) FROM transactions GROUP BY transactionId) THEN transactionId
+                ELSE (SELECT max(transactionId) FROM transactions) + rowid END,
+           amount, type, sourceId, destinationId, currency, createdAt
+    FROM transactions ORDER BY rowid;
+DROP TABLE transactions;
+ALTER TABLE transactions_v2 RENAME TO transactions;
+
+CREATE INDEX transactions_source_idx ON transactions (sourceId);
+CREATE INDEX transactions_destination_idx ON transactions (destinationId);
+CREATE INDEX transactions_created_at_idx ON transactions (createdAt);
+
+UPDATE sequences SET nextValue = max(nextValue, (SELECT coalesce(max(transactionId), 0) + 1 FROM transactions))
+    WHERE name = 'transactions';
@@ -0,0 +1,38 @@
+-- balances and amounts become whole numbers of the currency's minor unit, e.g. pennies for GBP and yen for JPY.
+-- exponent_of is registered by SchemaMigrator and gives the same exponent as Money.exponentOf
+CREATE table accounts_v3 (
+    id BIGINT NOT NULL PRIMARY KEY,
+    balance BIGINT NOT NULL,
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+INSERT INTO accounts_v3
+    SELECT id,
+           CAST(round(coalesce(balance, 0) * power(10, exponent_of(currency))) AS INTEGER),
+           currency, createdAt
+    FROM accounts;
+DROP TABLE accounts;
+ALTER TABLE accounts_v3 RENAME TO accounts;
+
+create table transactions_v3 (
+    transactionId BIGINT NOT NULL PRIMARY KEY,
+    amount BIGINT NOT NULL,
+    type VARCHAR(10),
+    sourceId BIGINT,
+    destinationId BIGINT,
+    currency VARCHAR(5),
+    createdAt TIMESTAMP
+    );
+
+INSERT INTO transactions_v3
+    SELECT transactionId,
+           CAST(round(coalesce(amount, 0) * power(10, exponent_of(currency))) AS INTEGER),
+           type, sourceId, destinationId, currency, createdAt
+    FROM transactions ORDER BY rowid;
+DROP TABLE transactions;
+ALTER TABLE transactions_v3 RENAME TO transactions;
+
+CREATE INDEX transactions_source_idx ON transactions (sourceId);
+CREATE INDEX transactions_destination_idx ON transactions (destinationId);
+CREATE INDEX transactions_created_at_idx ON transactions (createdAt);
@@ -0,0 +1,38 @@
+-- createdAt becomes epoch milliseconds. The old text was written in the server's local time, which SQLite's
+-- 'utc' modifier converts from, and anything unparseable becomes 0
+CREATE table accounts_v4 (
+    id BIGINT NOT NULL PRIMARY KEY,
+    balance BIGINT NOT NULL,
+    currency VARCHAR(5),
+    createdAt INTEGER NOT NULL
+    );
+
+INSERT INTO accounts_v4
+    SELECT id, balance, currency,
+           CASE WHEN typeof(createdAt) = 'integer' THEN createdAt
+                ELSE coalesce(CAST(strftime('%s', createdAt, 'utc') AS INTEGER) * 1000, 0) END
+    FROM accounts;
+DROP TABLE accounts;
+ALTER TABLE accounts_v4 RENAME TO accounts;
+
+create table transactions_v4 (
+    transactionId BIGINT NOT NULL PRIMARY KEY,
+    amount BIGINT NOT NULL,
+    type VARCHAR(10),
+    sourceId BIGINT,
+    destinationId BIGINT,
+    currency VARCHAR(5),
+    createdAt INTEGER NOT NULL
+    );
+
+INSERT INTO transactions_v4
+    SELECT transactionId, amount, type, sourceId, destinationId, currency,
+           CASE WHEN typeof(createdAt) = 'integer' THEN createdAt
+                ELSE coalesce(CAST(strftime('%s', createdAt, 'utc') AS INTEGER) * 1000, 0) END
+    FROM transactions ORDER BY rowid;
+DROP TABLE transactions;
+ALTER TABLE transactions_v4 RENAME TO transactions;
+
+CREATE INDEX transactions_source_idx ON transactions (sourceId);
+CREATE INDEX transactions_destination_idx ON transactions (destinationId);
+CREATE INDEX transactions_created_at_idx ON transactions (createdAt);
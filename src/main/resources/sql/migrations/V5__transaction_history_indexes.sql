@@ -0,0 +1,8 @@
+-- statement pages read one account's transfers newest first within a createdAt range. These indexes hold every
+-- column such a page returns, in that order, so a page is a short index scan that never touches the table
+DROP INDEX IF EXISTS transactions_source_idx;
+DROP INDEX IF EXISTS transactions_destination_idx;
+CREATE INDEX transactions_source_created_at_idx
+    ON transactions (sourceId, createdAt, transactionId, destinationId, amount, currency, type);
+CREATE INDEX transactions_destination_created_at_idx
+    ON transactions (destinationId, createdAt, transactionId, sourceId, amount, currency, type);
@@ -0,0 +1,33 @@
+-- The balance each account was opened with, so a balance can be rebuilt from the ledger. Existing accounts get
+-- the balance their current ledger rows imply. Ledger amounts are in minor units of the transfer currency and
+-- are rescaled to the account currency by rescale_minor_units, registered by SchemaMigrator
+ALTER TABLE accounts ADD COLUMN openingBalance BIGINT NOT NULL DEFAULT 0;
+
+UPDATE accounts SET openingBalance = balance
+    - coalesce((SELECT sum(rescale_minor_units(t.amount, t.currency, accounts.currency))
+                FROM transactions t WHERE t.destinationId = accounts.id), 0)
+    + coalesce((SELECT sum(rescale_minor_units(t.amount, t.currency, accounts.currency))
+                FROM transactions t WHERE t.sourceId = accounts.id), 0);
+
+-- running ledger sums per account, credits minus debits, covering every ledger row up to lastRowid
+CREATE TABLE ledger_checkpoints (
+    accountId BIGINT NOT NULL PRIMARY KEY,
+    netFlow BIGINT NOT NULL
+    );
+
+CREATE TABLE ledger_checkpoint_position (
+    id INTEGER NOT NULL PRIMARY KEY CHECK (id = 0),
+    lastRowid BIGINT NOT NULL
+    );
+
+INSERT INTO ledger_checkpoint_position
+    SELECT 0, coalesce(max(rowid), 0) FROM transactions;
+
+INSERT INTO ledger_checkpoints
+    SELECT accountId, sum(flow) FROM (
+        SELECT t.destinationId AS accountId, rescale_minor_units(t.amount, t.currency, a.currency) AS flow
+        FROM transactions t JOIN accounts a ON a.id = t.destinationId
+        UNION ALL
+        SELECT t.sourceId, -rescale_minor_units(t.amount, t.currency, a.currency)
+        FROM transactions t JOIN accounts a ON a.id = t.sourceId)
+    GROUP BY accountId
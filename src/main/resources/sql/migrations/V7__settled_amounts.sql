@@ -0,0 +1,10 @@
+-- Transfers can now change currency, so the ledger keeps what was debited and credited, each in minor units of
+-- its own account's currency. Earlier rows moved the same amount on both sides, rescaled to each account
+ALTER TABLE transactions ADD COLUMN sourceAmount BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE transactions ADD COLUMN destinationAmount BIGINT NOT NULL DEFAULT 0;
+
+UPDATE transactions SET
+    sourceAmount = coalesce((SELECT rescale_minor_units(transactions.amount, transactions.currency, a.currency)
+                             FROM accounts a WHERE a.id = transactions.sourceId), 0),
+    destinationAmount = coalesce((SELECT rescale_minor_units(transactions.amount, transactions.currency, a.currency)
+                                  FROM accounts a WHERE a.id = transactions.destinationId), 0)
@@ -0,0 +1,6 @@
+-- Transfers sent with an Idempotency-Key keep it on their ledger row, so a retry of an applied transfer is
+-- answered from the ledger instead of moving the money again. Rows without a key stay out of the index
+ALTER TABLE transactions ADD COLUMN idempotencyKey VARCHAR(255);
+
+CREATE UNIQUE INDEX IF NOT EXISTS transactions_idempotency_key_idx ON transactions (idempotencyKey)
+    WHERE idempotencyKey IS NOT NULL
@@ -0,0 +1,60 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountCacheTest {
+
+    private static AccountCache newCache(int maxEntries, long ttlMillis) {
+        CacheSettings settings = new CacheSettings();
+        settings.setMaxEntries(maxEntries);
+        settings.setTtlMillis(ttlMillis);
+        return new AccountCache(settings);
+    }
+
+    @Test
+    public void serves_cached_responses_until_invalidated() {
+        AccountCache cache = newCache(10, 60000);
+        assertNull(cache.get(1));
+
+        cache.put(1, "one", cache.stamp());
+        assertEquals("one", cache.get(1));
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void does_not_cache_a_read_that_raced_an_invalidation() {
+        AccountCache cache = newCache(10, 60000);
+        long stamp = cache.stamp();
+        cache.invalidate(1);
+
+        cache.put(1, "stale", stamp);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void evicts_the_oldest_entries_when_full() {
+        AccountCache cache = newCache(2, 60000);
+        cache.put(1, "one", cache.stamp());
+        cache.put(2, "two", cache.stamp());
+        cache.put(3, "three", cache.stamp());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(1));
+        assertEquals("three", cache.get(3));
+    }
+
+    @Test
+    public void expires_entries_after_the_ttl() throws InterruptedException {
+        AccountCache cache = newCache(10, 1);
+        cache.put(1, "one", cache.stamp());
+        Thread.sleep(5);
+        assertNull(cache.get(1));
+    }
+}
@@ -0,0 +1,100 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AccountFormatTest {
+    private static final long CREATED_AT = Timestamps.parse("2021-08-01 10:00:00");
+
+    @Test
+    public void round_trips_every_format() throws IOException {
+        for (AccountFormat format : AccountFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AccountFormat.AccountWriter writer = format.openWriter(out);
+            writer.write(1110111, 1010, 2, "GBP", CREATED_AT);
+            writer.write(2220222, 500, 0, "JPY", CREATED_AT);
+            writer.finish();
+
+            List<Account> accounts = readAll(format, out.toByteArray());
+            Assertions.assertEquals(2, accounts.size(), format.name());
+            Assertions.assertEquals(1110111, accounts.get(0).getId());
+            Assertions.assertEquals(Money.parse("10.1"), accounts.get(0).getBalance());
+            Assertions.assertEquals("GBP", accounts.get(0).getCurrency());
+            Assertions.assertEquals(CREATED_AT, accounts.get(0).getCreatedAt());
+            Assertions.assertEquals(Money.parse("500"), accounts.get(1).getBalance());
+            Assertions.assertEquals("JPY", accounts.get(1).getCurrency());
+        }
+        Assertions.assertEquals("id,balance,currency,createdAt\n1,0.05,GBP," + CREATED_AT + "\n",
+                write(AccountFormat.CSV, 1, 5, "GBP"));
+        Assertions.assertEquals("{\"id\":1,\"balance\":0.05,\"currency\":\"GBP\",\"createdAt\":\"" +
+                Timestamps.format(CREATED_AT) + "\"}\n", write(AccountFormat.NDJSON, 1, 5, "GBP"));
+    }
+
+    @Test
+    public void keeps_created_at_milliseconds_through_csv_and_binary() throws IOException {
+        for (AccountFormat format : List.of(AccountFormat.CSV, AccountFormat.BINARY)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AccountFormat.AccountWriter writer = format.openWriter(out);
+            writer.write(1, 100, 2, "GBP", CREATED_AT + 123);
+            writer.finish();
+
+            Assertions.assertEquals(CREATED_AT + 123, readAll(format, out.toByteArray()).get(0).getCreatedAt(),
+                    format.name());
+        }
+    }
+
+    @Test
+    public void reads_csv_with_or_without_a_header_and_created_at() throws IOException {
+        List<Account> accounts = readAll(AccountFormat.CSV,
+                "1,10.10,GBP\n\n2,20.20,GBP,1627812000000\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(2, accounts.size());
+        Assertions.assertEquals(1627812000000L, accounts.get(1).getCreatedAt());
+
+        IllegalArgumentException invalid = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> readAll(AccountFormat.CSV, "id,balance,currency\n1,10.10,GBP\n2,lots,GBP\n"
+                        .getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals("Line 3 has an invalid id or balance", invalid.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AccountFormat.of("xml"));
+    }
+
+    @Test
+    public void rejects_a_cut_short_snapshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AccountFormat.AccountWriter writer = AccountFormat.BINARY.openWriter(out);
+        writer.write(1, 100, 2, "GBP", CREATED_AT);
+        writer.write(2, 100, 2, "GBP", CREATED_AT);
+        writer.finish();
+        byte[] snapshot = out.toByteArray();
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> readAll(AccountFormat.BINARY, Arrays.copyOf(snapshot, snapshot.length - 3)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> readAll(AccountFormat.BINARY, "1,10.10,GBP\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String write(AccountFormat format, long id, long balance, String currency) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AccountFormat.AccountWriter writer = format.openWriter(out);
+        writer.write(id, balance, 2, currency, CREATED_AT);
+        writer.finish();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<Account> readAll(AccountFormat format, byte[] bytes) throws IOException {
+        AccountFormat.AccountReader reader = format.openReader(new ByteArrayInputStream(bytes));
+        List<Account> accounts = new ArrayList<>();
+        Account account;
+        while ((account = reader.next()) != null) {
+            accounts.add(account);
+        }
+        return accounts;
+    }
+}
@@ -2,18 +2,22 @@ package org.tenx.accounts;
 
 import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.mockito.internal.matchers.Not;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.io.IOException;
@@ -23,32 +27,27 @@ import java.util.List;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 public class ControllerTest {
 
-    private final String dbUrl = "jdbc:sqlite:10xBank";
-    private final DatabaseOperations dbOps = new DatabaseOperations(dbUrl);
     @Autowired
     private MockMvc mvc;
 
     @BeforeEach
-    public void setup() throws SQLException {
+    public void setup() throws Exception {
         System.out.println("Running the setup method");
-        dbOps.executeUnitStatement("DELETE FROM accounts");
-        dbOps.executeUnitStatement("DELETE FROM transactions");
-    }
-
-    @AfterEach
-    public void closeConnections() throws SQLException {
-        dbOps.connection.close();
+        // cleared through the app so its transaction ID allocator is reset as well
+        perform(MockMvcRequestBuilders.get("/clearalldata/accounts")).andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.get("/clearalldata/transactions")).andExpect(status().isOk());
     }
 
     @Test
     public void can_retrieve_account_status() throws Exception {
-        mvc.perform(MockMvcRequestBuilders.get("/getaccountstatus").accept(MediaType.APPLICATION_JSON))
+        perform(MockMvcRequestBuilders.get("/getaccountstatus").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().string(containsString("[]")));
 
-        mvc.perform(MockMvcRequestBuilders.post("/createaccount").content(
+        perform(MockMvcRequestBuilders.post("/createaccount").content(
                 "{\n" +
                 "    \"id\": \"2220222\",\n" +
                 "    \"balance\": 100000,\n" +
@@ -58,7 +57,7 @@ public class ControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(equalTo("Account 2220222 created successfully")));
 
-        mvc.perform(MockMvcRequestBuilders.get("/getaccountstatus").accept(MediaType.APPLICATION_JSON))
+        perform(MockMvcRequestBuilders.get("/getaccountstatus").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().string(containsString("[{" +
                         "\"id\":2220222," +
@@ -69,7 +68,7 @@ public class ControllerTest {
 
     @Test
     public void can_create_and_transfer_between_accounts() throws Exception {
-        mvc.perform(MockMvcRequestBuilders.post("/createaccount").content(
+        perform(MockMvcRequestBuilders.post("/createaccount").content(
                         "{\n" +
                         "    \"id\": \"2220222\",\n" +
                         "    \"balance\": 100000,\n" +
@@ -79,7 +78,7 @@ public class ControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(equalTo("Account 2220222 created successfully")));
 
-        mvc.perform(MockMvcRequestBuilders.post("/createaccount").content(
+        perform(MockMvcRequestBuilders.post("/createaccount").content(
                         "{\n" +
                         "    \"id\": \"1110111\",\n" +
                         "    \"balance\": 0.20,\n" +
@@ -90,7 +89,7 @@ public class ControllerTest {
                 .andExpect(content().string(equalTo("Account 1110111 created successfully")));
 
 
-        mvc.perform(MockMvcRequestBuilders.post("/transfer").content(
+        perform(MockMvcRequestBuilders.post("/transfer").content(
                          "{\n" +
                          "   \"id\": \"1\",\n" +
                          "   \"sourceAccountId\" : 2220222,\n" +
@@ -102,7 +101,7 @@ public class ControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(equalTo("Transaction successful. Transaction ID [1]")));
 
-        mvc.perform(MockMvcRequestBuilders.get("/getaccountstatus/1110111").accept(MediaType.APPLICATION_JSON))
+        perform(MockMvcRequestBuilders.get("/getaccountstatus/1110111").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().string(containsString("{" +
                         "\"id\":1110111," +
@@ -110,4 +109,222 @@ public class ControllerTest {
                         "\"currency\":\"GBP\"," +
                         "\"createdAt\":")));
     }
+
+    @Test
+    public void can_import_and_export_accounts() throws Exception {
+        perform(MockMvcRequestBuilders.post("/accounts/import?format=ndjson").content(
+                        "{\"id\": 1110111, \"balance\": 10.10, \"currency\": \"GBP\"}\n" +
+                        "{\"id\": 2220222, \"balance\": 20.20, \"currency\": \"GBP\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("Imported 2 accounts")));
+        perform(MockMvcRequestBuilders.post("/accounts/import?format=xml").content(""))
+                .andExpect(status().isBadRequest());
+        perform(MockMvcRequestBuilders.post("/accounts/import?format=csv").content("3,lots,GBP\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(equalTo("Line 1 has an invalid id or balance")));
+
+        perform(MockMvcRequestBuilders.get("/accounts/export?format=csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(content().string(startsWith("id,balance,currency,createdAt\n1110111,10.1,GBP,")));
+    }
+
+    @Test
+    public void can_reload_exchange_rates() throws Exception {
+        perform(MockMvcRequestBuilders.post("/fxrates/reload"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("Loaded 10 exchange rates")));
+    }
+
+    @Test
+    public void answers_a_retried_transfer_with_its_original_result() throws Exception {
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 1, \"balance\": 50, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 2, \"balance\": 0, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+
+        String body = "{\"sourceAccountId\": 1, \"destinationAccountId\": 2, \"amount\": 20, \"currency\": \"GBP\"}";
+        for (int i = 0; i < 2; i++) {
+            perform(MockMvcRequestBuilders.post("/transfer").header("Idempotency-Key", "order-17").content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(equalTo("Transaction successful. Transaction ID [1]")));
+        }
+        perform(MockMvcRequestBuilders.get("/getaccountstatus/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"balance\":30.0")));
+
+        perform(MockMvcRequestBuilders.post("/transfer").header("Idempotency-Key", "order-17")
+                .content(body.replace("20", "25")))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(content().string(equalTo(
+                        "Idempotency-Key order-17 was already used for a different transfer")));
+
+        perform(MockMvcRequestBuilders.post("/transfer").header("Idempotency-Key", " ").content(body))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void reports_archive_progress_and_rejects_a_bad_cutoff() throws Exception {
+        perform(MockMvcRequestBuilders.post("/transactions/archive").param("before", "last week"))
+                .andExpect(status().isBadRequest());
+        perform(MockMvcRequestBuilders.get("/transactions/archive"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"rowsArchived\":")));
+    }
+
+    @Test
+    public void can_post_transfer_batches() throws Exception {
+        perform(MockMvcRequestBuilders.post("/createaccount").content(
+                        "{\"id\": \"2220222\", \"balance\": 100, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.post("/createaccount").content(
+                        "{\"id\": \"1110111\", \"balance\": 0, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+
+        perform(MockMvcRequestBuilders.post("/transfers/batch?mode=atomic").content(
+                        "[{\"sourceAccountId\": 2220222, \"destinationAccountId\": 1110111, \"amount\": 10, \"currency\": \"GBP\"}," +
+                        " {\"sourceAccountId\": 1110111, \"destinationAccountId\": 2220222, \"amount\": 50, \"currency\": \"GBP\"}]"
+                ).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("[" +
+                        "\"Transfer not applied. The batch was rolled back because transfer 1 failed\"," +
+                        "\"The source balance is insufficient for this transaction\"]")));
+
+        perform(MockMvcRequestBuilders.post("/transfers/batch").contentType("application/x-ndjson").content(
+                        "{\"sourceAccountId\": 2220222, \"destinationAccountId\": 1110111, \"amount\": 10, \"currency\": \"GBP\"}\n" +
+                        "{\"sourceAccountId\": 1110111, \"destinationAccountId\": 2220222, \"amount\": 50, \"currency\": \"GBP\"}\n"
+                ).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        startsWith("[\"Transaction successful. Transaction ID ["),
+                        endsWith("\"The source balance is insufficient for this transaction\"]"))));
+
+        perform(MockMvcRequestBuilders.get("/getaccountstatus/1110111").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"balance\":10.0,")));
+    }
+
+    @Test
+    public void can_page_and_stream_accounts() throws Exception {
+        for (long id : new long[]{3, 1, 2}) {
+            perform(MockMvcRequestBuilders.post("/createaccount").content(
+                            "{\"id\": " + id + ", \"balance\": 5, \"currency\": \"GBP\"}"))
+                    .andExpect(status().isOk());
+        }
+
+        perform(MockMvcRequestBuilders.get("/getaccountstatus?limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(startsWith("[{\"id\":1,"), containsString("{\"id\":2,"),
+                        not(containsString("{\"id\":3,")))));
+
+        perform(MockMvcRequestBuilders.get("/getaccountstatus?after=2&limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(startsWith("[{\"id\":3,\"balance\":5.0,\"currency\":\"GBP\""),
+                        endsWith("}]"))));
+
+        MvcResult streamed = mvc.perform(MockMvcRequestBuilders.get("/getaccountstatus?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(streamed))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(startsWith("[{\"id\":1,"), containsString("{\"id\":3,"))));
+    }
+
+    @Test
+    public void can_page_transaction_history() throws Exception {
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 1, \"balance\": 50, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 2, \"balance\": 0, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        for (int i = 1; i <= 3; i++) {
+            perform(MockMvcRequestBuilders.post("/transfer").content(
+                    "{\"sourceAccountId\": 1, \"destinationAccountId\": 2, \"amount\": " + i +
+                    ", \"currency\": \"GBP\", \"createdAt\": " + i * 1000 + "}"))
+                    .andExpect(status().isOk());
+        }
+
+        perform(MockMvcRequestBuilders.get("/accounts/2/transactions?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(startsWith("{\"transactions\":[{\"transactionId\":3,"),
+                        containsString("{\"transactionId\":2,"), not(containsString("{\"transactionId\":1,")),
+                        containsString("\"nextCursor\":\""))));
+
+        perform(MockMvcRequestBuilders.get("/accounts/1/transactions?from=2000&to=3000"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(equalTo("{\"transactions\":[{\"transactionId\":2,\"type\":\"transfer\"," +
+                        "\"sourceAccountId\":1,\"destinationAccountId\":2,\"amount\":2.0,\"currency\":\"GBP\"," +
+                        "\"createdAt\":\"" + Timestamps.format(2000) + "\"}],\"nextCursor\":null}")));
+
+        perform(MockMvcRequestBuilders.get("/transactions/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"amount\":1.0,")));
+
+        perform(MockMvcRequestBuilders.get("/accounts/1/transactions?cursor=not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void cached_account_reflects_transfers() throws Exception {
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 1, \"balance\": 50, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 2, \"balance\": 0, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+
+        for (int i = 0; i < 2; i++) {
+            perform(MockMvcRequestBuilders.get("/getaccountstatus/1"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(containsString("\"balance\":50.0")));
+        }
+
+        perform(MockMvcRequestBuilders.post("/transfer").content(
+                "{\"sourceAccountId\": 1, \"destinationAccountId\": 2, \"amount\": 20, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("Transaction successful.")));
+
+        perform(MockMvcRequestBuilders.get("/getaccountstatus/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"balance\":30.0")));
+
+        perform(MockMvcRequestBuilders.get("/cachestats"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(containsString("\"hits\":"), containsString("\"misses\":"))));
+    }
+
+    @Test
+    public void exposes_transfer_and_db_metrics() throws Exception {
+        perform(MockMvcRequestBuilders.post("/createaccount")
+                .content("{\"id\": 1, \"balance\": 50, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+        perform(MockMvcRequestBuilders.post("/transfer").content(
+                "{\"sourceAccountId\": 1, \"destinationAccountId\": 2, \"amount\": 20, \"currency\": \"GBP\"}"))
+                .andExpect(status().isOk());
+
+        perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("tenx_transfers_total{outcome=\"not_found\",}"),
+                        containsString("tenx_store_operation_seconds_bucket{operation=\"transfer\""),
+                        containsString("tenx_db_statement_seconds_count{statement=\"ACCOUNT_RETRIEVAL\",}"),
+                        containsString("tenx_db_transaction_phase_seconds{phase=\"lock_wait\",quantile=\"0.99\",}"),
+                        containsString("tenx_db_pool_wait_seconds_count"),
+                        containsString("tenx_http_in_flight"))));
+    }
+
+    /**
+     * Store backed endpoints answer asynchronously, so dispatch their result before asserting on it.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        ResultActions actions = mvc.perform(request);
+        MvcResult result = actions.andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mvc.perform(MockMvcRequestBuilders.asyncDispatch(result));
+        }
+        return actions;
+    }
 }
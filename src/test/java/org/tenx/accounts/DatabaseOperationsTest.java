@@ -1,40 +1,60 @@
 package org.tenx.accounts;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 public class DatabaseOperationsTest {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final String dbUrl = "jdbc:sqlite:10xBankTestDB";
     private final DatabaseOperations dbOps = new DatabaseOperations(dbUrl);
+    // for checking what the store wrote, apart from the connections it uses itself
+    private Connection db;
 
     @BeforeEach
     public void setup() throws SQLException {
         System.out.println("Running the setup method");
-        dbOps.executeUnitStatement("DELETE FROM accounts");
-        dbOps.executeUnitStatement("DELETE FROM transactions");
+        dbOps.clearTables("accounts");
+        dbOps.clearTables("transactions");
+        db = DriverManager.getConnection(dbUrl);
     }
 
     @AfterEach
     public void closeConnections() throws SQLException {
-        dbOps.connection.close();
+        db.close();
+        dbOps.close();
     }
 
     @Test
     public void test_can_create_account() throws IOException, SQLException {
         Account acc = new Account();
         acc.setId(1110111);
-        acc.setBalance(10.10);
+        acc.setBalance(Money.parse("10.10"));
         acc.setCurrency("GBP");
 
         String expectedSuccessful = "Account " + acc.getId() + " created successfully";
@@ -57,7 +77,7 @@ public class DatabaseOperationsTest {
     public void test_can_return_correct_response_on_creation() throws IOException, SQLException {
         Account acc = new Account();
         acc.setId(1110111);
-        acc.setBalance(10.10);
+        acc.setBalance(Money.parse("10.10"));
         acc.setCurrency("GBP");
 
         String expectedSuccessful = "Account " + acc.getId() + " created successfully";
@@ -74,7 +94,7 @@ public class DatabaseOperationsTest {
         Transfer goodTransferShouldWork = new Transfer();
         goodTransferShouldWork.setSourceAccountId(1110111);
         goodTransferShouldWork.setDestinationAccountId(2220222);
-        goodTransferShouldWork.setAmount(1.2);
+        goodTransferShouldWork.setAmount(Money.parse("1.2"));
         goodTransferShouldWork.setCurrency("GBP");
 
         String expectedSuccessfulFirstTransfer = "Transaction successful. Transaction ID [1]";
@@ -90,19 +110,19 @@ public class DatabaseOperationsTest {
         Transfer transfer = new Transfer();
         transfer.setSourceAccountId(1110111);
         transfer.setDestinationAccountId(2220222);
-        transfer.setAmount(1.20);
+        transfer.setAmount(Money.parse("1.20"));
         transfer.setCurrency("GBP");
 
         dbOps.handleTransaction(transfer);
 
-        ResultSet rs = dbOps.executeStatement("select * from transactions");
+        ResultSet rs = query("select * from transactions");
         Transfer resultingTransfer = new Transfer();
         while(rs.next()) {
             resultingTransfer.setId(rs.getLong("transactionId"));
-            resultingTransfer.setAmount(rs.getDouble("amount"));
+            resultingTransfer.setAmount(Money.ofMinorUnits(rs.getLong("amount"), 2));
             resultingTransfer.setSourceAccountId(rs.getLong("sourceId"));
             resultingTransfer.setDestinationAccountId(rs.getLong("destinationId"));
-            resultingTransfer.setCreatedAt(rs.getString("createdAt"));
+            resultingTransfer.setCreatedAt(rs.getLong("createdAt"));
             resultingTransfer.setCurrency(rs.getString("currency"));
         }
         rs.close();
@@ -122,7 +142,7 @@ public class DatabaseOperationsTest {
         Transfer transferWithInsufficientBalance = new Transfer();
         transferWithInsufficientBalance.setSourceAccountId(1110111);
         transferWithInsufficientBalance.setDestinationAccountId(2220222);
-        transferWithInsufficientBalance.setAmount(10000000);
+        transferWithInsufficientBalance.setAmount(Money.parse("10000000"));
         transferWithInsufficientBalance.setCurrency("GBP");
 
         String expectedFailure = "The source balance is insufficient for this transaction";
@@ -134,7 +154,7 @@ public class DatabaseOperationsTest {
         Transfer transferToSameAccount = new Transfer();
         transferToSameAccount.setSourceAccountId(1110111);
         transferToSameAccount.setDestinationAccountId(1110111);
-        transferToSameAccount.setAmount(50);
+        transferToSameAccount.setAmount(Money.parse("50"));
         transferToSameAccount.setCurrency("GBP");
 
         String expectedFailureSameAccount = "Account ID's " + transferToSameAccount.getSourceAccountId() + " and " +
@@ -149,7 +169,7 @@ public class DatabaseOperationsTest {
         Transfer transferAccountDoesNotExist = new Transfer();
         transferAccountDoesNotExist.setSourceAccountId(11101112);
         transferAccountDoesNotExist.setDestinationAccountId(1110111);
-        transferAccountDoesNotExist.setAmount(10000000);
+        transferAccountDoesNotExist.setAmount(Money.parse("10000000"));
         transferAccountDoesNotExist.setCurrency("GBP");
 
         String expectedFailureSourceAccountDoesNotExist = "Account ID " + transferAccountDoesNotExist.getSourceAccountId() +
@@ -160,7 +180,7 @@ public class DatabaseOperationsTest {
         Transfer transferBothAccountsDontExist = new Transfer();
         transferBothAccountsDontExist.setSourceAccountId(11101112);
         transferBothAccountsDontExist.setDestinationAccountId(11101111);
-        transferBothAccountsDontExist.setAmount(10000000);
+        transferBothAccountsDontExist.setAmount(Money.parse("10000000"));
         transferBothAccountsDontExist.setCurrency("GBP");
 
         String expectedWhenBothAccountsDontExist = "Account ID's " + transferBothAccountsDontExist.getDestinationAccountId() +
@@ -172,20 +192,19 @@ public class DatabaseOperationsTest {
 
     @Test
     public void can_get_row_count() throws IOException, SQLException {
-        final String transactionHistoryCountQueryFile = "src/main/resources/sql/TransactionHistoryCountQuery.sql";
-        String transactionIdQuery = dbOps.getQueryFromFile(transactionHistoryCountQueryFile);
+        String transactionIdQuery = SqlStatement.loadFromClasspath("TransactionHistoryCountQuery.sql");
 
-        Assertions.assertEquals(0, dbOps.getRowCount(transactionIdQuery));
+        Assertions.assertEquals(0, queryForLong(transactionIdQuery));
 
         createAndReturnAccounts();
         Transfer transfer = new Transfer();
         transfer.setSourceAccountId(1110111);
         transfer.setDestinationAccountId(2220222);
-        transfer.setAmount(10);
+        transfer.setAmount(Money.parse("10"));
         transfer.setCurrency("GBP");
         dbOps.handleTransaction(transfer);
 
-        Assertions.assertEquals(1, dbOps.getRowCount(transactionIdQuery));
+        Assertions.assertEquals(1, queryForLong(transactionIdQuery));
     }
 
     @Test
@@ -195,23 +214,573 @@ public class DatabaseOperationsTest {
         Assertions.assertTrue(dbOps.isAccountExists(1110111));
     }
 
+    @Test
+    public void migrates_schema_to_latest_version() throws SQLException {
+        Assertions.assertEquals(SchemaMigrator.getLatestVersion(), new SchemaMigrator(db).getCurrentVersion());
+        Assertions.assertEquals(4, queryForLong("select count(*) as rowcount from sqlite_master " +
+                "where type = 'index' and tbl_name = 'transactions' and sql is not null"));
+
+        ResultSet rs = query("explain query plan select * from accounts where id = 1110111");
+        rs.next();
+        Assertions.assertTrue(rs.getString("detail").contains("USING INDEX"));
+        rs.close();
+    }
+
+    @Test
+    public void migration_renumbers_shared_transaction_ids_and_refuses_shared_account_ids(@TempDir Path directory)
+            throws SQLException {
+        String legacyUrl = "jdbc:sqlite:" + directory.resolve("legacy.db");
+        try (Connection legacy = DriverManager.getConnection(legacyUrl);
+             Statement statement = legacy.createStatement()) {
+            createLegacyTables(statement);
+            // IDs 1 and 2 handed out again by the old count(*) generator
+            for (String row : List.of("1, 1.00", "2, 2.00", "2, 3.00", "2, 4.00")) {
+                statement.execute("insert into transactions values (" + row + ", 'transfer', 1, 2, 'GBP', "
+                        + "'2021-08-01 10:00:00')");
+            }
+
+            new SchemaMigrator(legacy).migrate();
+
+            List<Long> transactionIds = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("select transactionId, amount from transactions "
+                    + "order by amount")) {
+                while (rs.next()) {
+                    transactionIds.add(rs.getLong("transactionId"));
+                }
+            }
+            Assertions.assertEquals(List.of(1L, 2L, 5L, 6L), transactionIds);
+            try (ResultSet rs = statement.executeQuery("select nextValue from sequences")) {
+                Assertions.assertEquals(7, rs.getLong(1));
+            }
+        }
+
+        String sharedAccountsUrl = "jdbc:sqlite:" + directory.resolve("shared-accounts.db");
+        try (Connection legacy = DriverManager.getConnection(sharedAccountsUrl);
+             Statement statement = legacy.createStatement()) {
+            createLegacyTables(statement);
+            statement.execute("insert into accounts values (1, 1.00, 'GBP', '2021-08-01 10:00:00')");
+            statement.execute("insert into accounts values (1, 2.00, 'GBP', '2021-08-01 10:00:00')");
+
+            SQLException failure = Assertions.assertThrows(SQLException.class,
+                    () -> new SchemaMigrator(legacy).migrate());
+            Assertions.assertTrue(failure.getMessage().contains("1 account IDs are shared"), failure.getMessage());
+            Assertions.assertEquals(1, new SchemaMigrator(legacy).getCurrentVersion());
+            try (ResultSet rs = statement.executeQuery("select count(*) from accounts")) {
+                Assertions.assertEquals(2, rs.getLong(1));
+            }
+        }
+    }
+
+    @Test
+    public void migration_scales_legacy_balances_by_each_currency_exponent(@TempDir Path directory) throws Exception {
+        try (Connection legacy = DriverManager.getConnection("jdbc:sqlite:" + directory.resolve("legacy.db"));
+             Statement statement = legacy.createStatement()) {
+            createLegacyTables(statement);
+            statement.execute("insert into accounts values (1, 10.25, 'GBP', '2021-08-01 10:00:00'), "
+                    + "(2, 500, 'jpy', '2021-08-01 10:00:00'), (3, 1.125, 'KWD', '2021-08-01 10:00:00'), "
+                    + "(4, 1.5, 'UYW', '2021-08-01 10:00:00'), (5, 3, null, '2021-08-01 10:00:00')");
+
+            new SchemaMigrator(legacy).migrate();
+
+            List<Long> balances = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("select balance from accounts order by id")) {
+                while (rs.next()) {
+                    balances.add(rs.getLong(1));
+                }
+            }
+            // recent JDKs give UYW 4 decimal places, where a hand written table would have assumed 2
+            long uyw = Money.parse("1.5").toMinorUnits(Money.exponentOf("UYW"));
+            Assertions.assertEquals(List.of(1025L, 500L, 1125L, uyw, 300L), balances);
+        }
+    }
+
+    private static void createLegacyTables(Statement statement) throws SQLException {
+        for (String query : SqlStatement.loadFromClasspath("migrations/V1__create_tables.sql").split(";")) {
+            if (!query.isBlank()) {
+                statement.execute(query);
+            }
+        }
+    }
+
+    @Test
+    public void can_serve_concurrent_reads_from_pool() throws Exception {
+        List<Account> accounts = createAndReturnAccounts();
+        String expectedAccount = objectMapper.writeValueAsString(accounts.get(0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            results.add(executor.submit(() -> dbOps.getAccountDetails(1110111)));
+        }
+        for (Future<String> result : results) {
+            Assertions.assertEquals(expectedAccount, result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void concurrent_transfers_do_not_lose_updates() throws Exception {
+        createAndReturnAccounts();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Transfer transfer = new Transfer();
+            transfer.setSourceAccountId(1110111);
+            transfer.setDestinationAccountId(2220222);
+            transfer.setAmount(Money.parse("0.05"));
+            transfer.setCurrency("GBP");
+            results.add(executor.submit(() -> dbOps.handleTransaction(transfer)));
+        }
+        for (Future<String> result : results) {
+            Assertions.assertTrue(result.get().startsWith("Transaction successful."));
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(100, queryForLong("select count(*) as rowcount from transactions"));
+        Assertions.assertEquals(100, queryForLong(
+                "select count(distinct transactionId) as rowcount from transactions"));
+        Assertions.assertEquals(510, getStoredBalance(1110111));
+        Assertions.assertEquals(2520, getStoredBalance(2220222));
+    }
+
+    @Test
+    public void group_commit_applies_concurrent_transfers_in_batches() throws Exception {
+        createAndReturnAccounts();
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setGroupCommitEnabled(true);
+        settings.setGroupCommitMaxLingerMillis(20);
+
+        try (DatabaseOperations groupCommitOps = new DatabaseOperations(settings)) {
+            ExecutorService executor = Executors.newFixedThreadPool(16);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                Transfer transfer = new Transfer();
+                transfer.setSourceAccountId(1110111);
+                transfer.setDestinationAccountId(2220222);
+                transfer.setAmount(Money.parse(i == 0 ? "1000" : "0.05"));
+                transfer.setCurrency("GBP");
+                results.add(executor.submit(() -> groupCommitOps.handleTransaction(transfer)));
+            }
+            Assertions.assertEquals("The source balance is insufficient for this transaction", results.get(0).get());
+            for (Future<String> result : results.subList(1, results.size())) {
+                Assertions.assertTrue(result.get().startsWith("Transaction successful."));
+            }
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(63, queryForLong("select count(*) as rowcount from transactions"));
+        Assertions.assertEquals(695, getStoredBalance(1110111));
+        Assertions.assertEquals(2335, getStoredBalance(2220222));
+    }
+
+    @Test
+    public void group_commit_fails_a_batch_that_throws_and_keeps_committing() throws Exception {
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        AtomicBoolean throwOnce = new AtomicBoolean(true);
+        try (ConnectionPool pool = new ConnectionPool(settings, BankMetrics.global());
+             GroupCommitter committer = new GroupCommitter(pool, settings, (conn, transfer, transactionId) -> {
+                 if (throwOnce.getAndSet(false)) {
+                     throw new IllegalStateException("applier bug");
+                 }
+                 return "applied " + transactionId;
+             })) {
+            SQLException failure = Assertions.assertThrows(SQLException.class,
+                    () -> committer.submit(new Transfer(), 1));
+            Assertions.assertEquals("applier bug", failure.getCause().getMessage());
+            Assertions.assertEquals("applied 2", committer.submit(new Transfer(), 2));
+        }
+    }
+
+    @Test
+    public void pages_through_transaction_history_newest_first() throws Exception {
+        createAndReturnAccounts();
+        for (int i = 1; i <= 5; i++) {
+            Transfer transfer = new Transfer();
+            transfer.setSourceAccountId(i % 2 == 0 ? 2220222 : 1110111);
+            transfer.setDestinationAccountId(i % 2 == 0 ? 1110111 : 2220222);
+            transfer.setAmount(Money.parse("0.0" + i));
+            transfer.setCurrency("GBP");
+            transfer.setCreatedAt(1_000_000L * i);
+            dbOps.handleTransaction(transfer);
+        }
+
+        JsonNode firstPage = objectMapper.readTree(dbOps.getTransactionHistory(1110111, Long.MIN_VALUE,
+                Long.MAX_VALUE, null, 2));
+        Assertions.assertEquals(List.of(5L, 4L), transactionIds(firstPage));
+        Assertions.assertEquals(2220222, firstPage.get("transactions").get(1).get("sourceAccountId").asLong());
+        Assertions.assertEquals("0.04", firstPage.get("transactions").get(1).get("amount").asText());
+
+        HistoryCursor cursor = HistoryCursor.decode(firstPage.get("nextCursor").asText());
+        JsonNode secondPage = objectMapper.readTree(dbOps.getTransactionHistory(1110111, Long.MIN_VALUE,
+                Long.MAX_VALUE, cursor, 2));
+        Assertions.assertEquals(List.of(3L, 2L), transactionIds(secondPage));
+
+        JsonNode lastPage = objectMapper.readTree(dbOps.getTransactionHistory(1110111, Long.MIN_VALUE,
+                Long.MAX_VALUE, HistoryCursor.decode(secondPage.get("nextCursor").asText()), 2));
+        Assertions.assertEquals(List.of(1L), transactionIds(lastPage));
+        Assertions.assertTrue(lastPage.get("nextCursor").isNull());
+
+        JsonNode range = objectMapper.readTree(dbOps.getTransactionHistory(1110111, 2_000_000L, 4_000_000L,
+                null, 10));
+        Assertions.assertEquals(List.of(3L, 2L), transactionIds(range));
+
+        JsonNode single = objectMapper.readTree(dbOps.getTransaction(3));
+        Assertions.assertEquals(1110111, single.get("sourceAccountId").asLong());
+        Assertions.assertEquals(Timestamps.format(3_000_000L), single.get("createdAt").asText());
+        Assertions.assertEquals("Error the transaction with ID 42 does not exist.", dbOps.getTransaction(42));
+    }
+
+    @Test
+    public void transaction_history_is_served_from_covering_indexes() throws SQLException {
+        ResultSet rs = query("explain query plan " + SqlStatement.TRANSACTION_HISTORY.getQuery()
+                .replace("?1", "1110111").replace("?6", "10").replaceAll("\\?[2-5]", "0"));
+        List<String> details = new ArrayList<>();
+        while (rs.next()) {
+            details.add(rs.getString("detail"));
+        }
+        rs.close();
+        Assertions.assertTrue(details.stream().anyMatch(d -> d.contains("transactions_source_created_at_idx")));
+        Assertions.assertTrue(details.stream().anyMatch(d -> d.contains("transactions_destination_created_at_idx")));
+        Assertions.assertTrue(details.stream().filter(d -> d.startsWith("SEARCH"))
+                .allMatch(d -> d.contains("COVERING INDEX")), details.toString());
+    }
+
+    @Test
+    public void reconciles_balances_against_the_ledger_from_checkpoints() throws Exception {
+        createAndReturnAccounts();
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setReconciliationEnabled(false);
+        settings.setReconciliationChunkSize(2);
+
+        try (DatabaseOperations reconcilingOps = new DatabaseOperations(settings)) {
+            for (int i = 0; i < 5; i++) {
+                reconcilingOps.handleTransaction(transfer(1110111, 2220222, "0.10"));
+            }
+            Assertions.assertEquals(5, reconcilingOps.reconciler.reconcile());
+            Assertions.assertEquals(0, reconcilingOps.reconciler.getDriftedAccountCount());
+
+            db.createStatement().execute("update accounts set balance = balance + 7 where id = 2220222");
+            reconcilingOps.handleTransaction(transfer(1110111, 2220222, "0.10"));
+            Assertions.assertEquals(1, reconcilingOps.reconciler.reconcile());
+            JsonNode report = objectMapper.readTree(reconcilingOps.getReconciliationReport());
+            Assertions.assertEquals(6, report.get("position").asLong());
+            Assertions.assertEquals(2, report.get("accountsVerified").asInt());
+            Assertions.assertEquals(2220222, report.get("driftedAccounts").get(0).get("accountId").asLong());
+            Assertions.assertEquals("20.87", report.get("driftedAccounts").get(0).get("balance").asText());
+            Assertions.assertEquals("20.8", report.get("driftedAccounts").get(0).get("ledgerBalance").asText());
+
+            Assertions.assertEquals(0, reconcilingOps.reconciler.reconcile());
+        }
+
+        // a fresh process starts from the saved checkpoint and verifies every account once
+        try (DatabaseOperations restartedOps = new DatabaseOperations(settings)) {
+            Assertions.assertEquals(0, restartedOps.reconciler.reconcile());
+            Assertions.assertEquals(1, restartedOps.reconciler.getDriftedAccountCount());
+
+            restartedOps.clearTables("transactions");
+            Assertions.assertEquals(0, restartedOps.reconciler.reconcile());
+            Assertions.assertEquals(0, restartedOps.reconciler.getDriftedAccountCount());
+        }
+    }
+
+    @Test
+    public void converts_cross_currency_transfers_at_the_cached_rate() throws Exception {
+        createAndReturnAccounts();
+        Account dollars = new Account();
+        dollars.setId(3330333);
+        dollars.setBalance(Money.parse("5.00"));
+        dollars.setCurrency("USD");
+        dbOps.createAccountEntry(dollars);
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setReconciliationEnabled(false);
+        FxRateTable exchangeRates = FxRateTable.of(FxRates.parse(new StringReader("GBP,USD,1.25")));
+
+        try (DatabaseOperations fxOps = new DatabaseOperations(settings, BankMetrics.global(), exchangeRates)) {
+            Assertions.assertEquals(TransferMessages.successful(1),
+                    fxOps.handleTransaction(transfer(1110111, 3330333, "0.10")));
+            Assertions.assertEquals(1000, getStoredBalance(1110111));
+            Assertions.assertEquals(512, getStoredBalance(3330333));
+
+            ResultSet rs = query("select sourceAmount, destinationAmount from transactions");
+            rs.next();
+            Assertions.assertEquals(10, rs.getLong("sourceAmount"));
+            Assertions.assertEquals(12, rs.getLong("destinationAmount"));
+            rs.close();
+
+            Transfer euros = transfer(1110111, 2220222, "1.00");
+            euros.setCurrency("EUR");
+            Assertions.assertEquals(TransferMessages.noExchangeRate("EUR", "GBP"), fxOps.handleTransaction(euros));
+            Assertions.assertEquals(1000, getStoredBalance(1110111));
+
+            // without a currency the amount is in the source account's, never moved 1:1 between two currencies
+            Transfer noCurrency = transfer(3330333, 1110111, "1.00");
+            noCurrency.setCurrency(null);
+            FxRateTable noRates = FxRateTable.of(FxRates.EMPTY);
+            try (DatabaseOperations noRatesOps = new DatabaseOperations(settings, BankMetrics.global(), noRates)) {
+                Assertions.assertEquals(TransferMessages.noExchangeRate("USD", "GBP"),
+                        noRatesOps.handleTransaction(noCurrency));
+            }
+            Assertions.assertEquals(512, getStoredBalance(3330333));
+            Assertions.assertEquals(TransferMessages.successful(3), fxOps.handleTransaction(noCurrency));
+            Assertions.assertEquals(412, getStoredBalance(3330333));
+            Assertions.assertEquals(1080, getStoredBalance(1110111));
+
+            fxOps.reconciler.reconcile();
+            Assertions.assertEquals(0, fxOps.reconciler.getDriftedAccountCount());
+        }
+    }
+
+    @Test
+    public void imports_accounts_all_or_nothing_across_batches() throws Exception {
+        createAndReturnAccounts();
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setReconciliationEnabled(false);
+        settings.setImportBatchSize(2);
+
+        try (DatabaseOperations importingOps = new DatabaseOperations(settings)) {
+            Assertions.assertEquals(TransferMessages.importDuplicate(2220222), importingOps.importAccounts(
+                    csv("3,1.00,GBP\n4,2.00,GBP\n5,3.00,GBP\n2220222,4.00,GBP\n")));
+            Assertions.assertEquals(TransferMessages.importDuplicate(5), importingOps.importAccounts(
+                    csv("5,3.00,GBP\n5,4.00,GBP\n")));
+            Assertions.assertEquals(TransferMessages.importInvalidBalance(6, Money.parse("1.5"), "JPY"),
+                    importingOps.importAccounts(csv("5,3.00,GBP\n6,1.5,JPY\n")));
+            Assertions.assertEquals(2, queryForLong("select count(*) as rowcount from accounts"));
+
+            Assertions.assertEquals(TransferMessages.imported(3), importingOps.importAccounts(
+                    csv("3,1.00,GBP,2021-08-01 10:00:00\n4,2.00,GBP\n5,300,JPY\n")));
+            Assertions.assertEquals(5, queryForLong("select count(*) as rowcount from accounts"));
+            Assertions.assertEquals(300, getStoredBalance(5));
+            Assertions.assertEquals(BankMetrics.Outcome.SUCCESS,
+                    TransferMessages.outcomeOf(importingOps.handleTransaction(transfer(3, 4, "0.50"))));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            importingOps.exportAccounts(AccountFormat.CSV.openWriter(out));
+            String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+            Assertions.assertEquals(6, lines.length);
+            Assertions.assertEquals("3,0.5,GBP," + Timestamps.parse("2021-08-01 10:00:00"), lines[1]);
+        }
+    }
+
+    @Test
+    public void archives_old_transactions_in_chunks_and_keeps_the_ledger_reconciled(@TempDir Path archiveDirectory)
+            throws Exception {
+        createAndReturnAccounts();
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setReconciliationEnabled(false);
+        settings.setArchiveDirectory(archiveDirectory.toString());
+        settings.setArchiveChunkSize(2);
+        settings.setArchivePauseMillis(0);
+        long old = Timestamps.parse("2021-08-01 10:00:00");
+
+        try (DatabaseOperations archivingOps = new DatabaseOperations(settings)) {
+            for (long createdAt : new long[]{old, old, old, old, old + 2 * 86400000L, old}) {
+                Transfer transfer = transfer(1110111, 2220222, "0.10");
+                transfer.setCreatedAt(createdAt);
+                archivingOps.handleTransaction(transfer);
+            }
+            String started = archivingOps.archiveTransactions(old + 86400000L);
+            Assertions.assertTrue(started.startsWith("Archiving transactions created before"), started);
+            JsonNode status = awaitArchived(archivingOps);
+            Assertions.assertEquals("COMPLETED", status.get("state").asText());
+            Assertions.assertEquals(4, status.get("rowsArchived").asLong());
+            Assertions.assertEquals(2, status.get("chunks").asInt());
+
+            // the newer row stays, and so does the newest, however old
+            Assertions.assertEquals(2, queryForLong("select count(*) as rowcount from transactions"));
+            Assertions.assertEquals("Error the transaction with ID 1 does not exist.", archivingOps.getTransaction(1));
+            try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + status.get("archiveFile").asText());
+                 ResultSet rs = archive.createStatement().executeQuery(
+                         "select count(*) as rowcount, max(transactionId) as last from transactions")) {
+                Assertions.assertEquals(4, rs.getLong("rowcount"));
+                Assertions.assertEquals(4, rs.getLong("last"));
+            }
+
+            Assertions.assertEquals(BankMetrics.Outcome.SUCCESS,
+                    TransferMessages.outcomeOf(archivingOps.handleTransaction(transfer(1110111, 2220222, "0.10"))));
+            Assertions.assertEquals(1, archivingOps.reconciler.reconcile());
+            Assertions.assertEquals(0, archivingOps.reconciler.getDriftedAccountCount());
+
+            // clearing the ledger hands out transaction IDs 1 and 2 again, they must not replace the archived ones
+            archivingOps.clearTables("transactions");
+            for (int i = 0; i < 3; i++) {
+                Transfer transfer = transfer(1110111, 2220222, "0.10");
+                transfer.setCreatedAt(old + 1);
+                archivingOps.handleTransaction(transfer);
+            }
+            archivingOps.archiveTransactions(old + 86400000L);
+            status = awaitArchived(archivingOps);
+            Assertions.assertEquals("FAILED", status.get("state").asText());
+            Assertions.assertTrue(status.get("error").asText().startsWith("Transaction 1 is already in"),
+                    status.get("error").asText());
+            Assertions.assertEquals(3, queryForLong("select count(*) as rowcount from transactions"));
+        }
+    }
+
+    @Test
+    public void applies_a_transfer_once_per_idempotency_key() throws Exception {
+        createAndReturnAccounts();
+        Transfer transfer = transfer(1110111, 2220222, "0.10");
+        transfer.setIdempotencyKey("retry-me");
+        Assertions.assertEquals(TransferMessages.successful(1), dbOps.handleTransaction(transfer));
+
+        // no index in front of the engine here, the key is found on the ledger row
+        Transfer retry = transfer(1110111, 2220222, "0.10");
+        retry.setIdempotencyKey("retry-me");
+        Assertions.assertEquals(TransferMessages.successful(1), dbOps.handleTransaction(retry));
+        // without a currency the transfer is in the source account's, so this is still the same transfer
+        Transfer noCurrency = transfer(1110111, 2220222, "0.1");
+        noCurrency.setCurrency(null);
+        noCurrency.setIdempotencyKey("retry-me");
+        Assertions.assertEquals(TransferMessages.successful(1), dbOps.handleTransaction(noCurrency));
+        Transfer other = transfer(1110111, 2220222, "0.20");
+        other.setIdempotencyKey("retry-me");
+        Assertions.assertThrows(IdempotencyKeyReusedException.class, () -> dbOps.handleTransaction(other));
+        Assertions.assertEquals(1000, getStoredBalance(1110111));
+        Assertions.assertEquals(1, queryForLong("select count(*) as rowcount from transactions"));
+
+        Assertions.assertEquals(BankMetrics.Outcome.SUCCESS,
+                TransferMessages.outcomeOf(dbOps.handleTransaction(transfer(1110111, 2220222, "0.10"))));
+        Assertions.assertEquals(990, getStoredBalance(1110111));
+    }
+
+    @Test
+    public void serves_reads_from_read_only_connections_and_refreshed_snapshots(@TempDir Path snapshotDirectory)
+            throws Exception {
+        createAndReturnAccounts();
+        try (PooledConnection reader = dbOps.readReplica.borrow()) {
+            Assertions.assertThrows(SQLException.class,
+                    () -> reader.getConnection().createStatement().execute("delete from accounts"));
+        }
+
+        DatabaseSettings settings = new DatabaseSettings(dbUrl);
+        settings.setReconciliationEnabled(false);
+        settings.setReadSnapshotDirectory(snapshotDirectory.toString());
+        settings.setReadSnapshotRefreshMillis(60000);
+        try (DatabaseOperations snapshotOps = new DatabaseOperations(settings)) {
+            AccountStore cachedOps = new CachingAccountStore(snapshotOps, new AccountCache(new CacheSettings()));
+            cachedOps.handleTransaction(transfer(1110111, 2220222, "0.10"));
+            // the transfer is committed but the snapshot readers are on predates it, and so does what is cached
+            Assertions.assertTrue(cachedOps.getAccountDetails(1110111).contains("\"balance\":10.1"));
+            Assertions.assertTrue(snapshotOps.readReplica.getStalenessMillis() >= 0);
+
+            Assertions.assertTrue(snapshotOps.readReplica.refresh());
+            Assertions.assertTrue(cachedOps.getAccountDetails(1110111).contains("\"balance\":10.0"));
+            Assertions.assertTrue(dbOps.getAccountDetails(1110111).contains("\"balance\":10.0"));
+            // nothing committed since, so there is nothing to copy
+            Assertions.assertFalse(snapshotOps.readReplica.refresh());
+
+            // a long streamed read keeps its connection and its file across any number of refreshes
+            try (PooledConnection streaming = snapshotOps.readReplica.borrow()) {
+                for (int i = 0; i < 2; i++) {
+                    snapshotOps.handleTransaction(transfer(1110111, 2220222, "0.10"));
+                    Assertions.assertTrue(snapshotOps.readReplica.refresh());
+                }
+                try (ResultSet rs = streaming.getConnection().createStatement()
+                        .executeQuery("select count(*) from accounts")) {
+                    Assertions.assertEquals(2, rs.getLong(1));
+                }
+                try (Stream<Path> left = Files.list(snapshotDirectory)) {
+                    Assertions.assertEquals(2, left.count());
+                }
+            }
+            try (Stream<Path> left = Files.list(snapshotDirectory)) {
+                Assertions.assertEquals(1, left.count());
+            }
+        }
+        try (Stream<Path> left = Files.list(snapshotDirectory)) {
+            Assertions.assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    public void clearing_a_table_keeps_its_indexes() throws Exception {
+        String indexCount = "select count(*) as rowcount from sqlite_master where tbl_name = 'transactions' " +
+                "and type = 'index'";
+        long indexes = queryForLong(indexCount);
+        createAndReturnAccounts();
+        dbOps.handleTransaction(transfer(1110111, 2220222, "0.10"));
+
+        Assertions.assertEquals("Transactions table cleared", dbOps.clearTables("transactions"));
+        Assertions.assertEquals(0, queryForLong("select count(*) as rowcount from transactions"));
+        Assertions.assertEquals(indexes, queryForLong(indexCount));
+        Assertions.assertEquals(TransferMessages.successful(1),
+                dbOps.handleTransaction(transfer(1110111, 2220222, "0.10")));
+    }
+
+    private static JsonNode awaitArchived(AccountStore store) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 0; i < 500; i++) {
+            JsonNode status = mapper.readTree(store.getArchiveStatus());
+            if (!status.get("state").asText().equals("RUNNING")) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("The archive run did not finish");
+    }
+
+    private static AccountFormat.AccountReader csv(String lines) throws IOException {
+        return AccountFormat.CSV.openReader(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Transfer transfer(long sourceAccountId, long destinationAccountId, String amount) {
+        Transfer transfer = new Transfer();
+        transfer.setSourceAccountId(sourceAccountId);
+        transfer.setDestinationAccountId(destinationAccountId);
+        transfer.setAmount(Money.parse(amount));
+        transfer.setCurrency("GBP");
+        return transfer;
+    }
+
+    private static List<Long> transactionIds(JsonNode page) {
+        List<Long> ids = new ArrayList<>();
+        page.get("transactions").forEach(transaction -> ids.add(transaction.get("transactionId").asLong()));
+        return ids;
+    }
+
+    private ResultSet query(String query) throws SQLException {
+        Statement statement = db.createStatement();
+        statement.closeOnCompletion();
+        return statement.executeQuery(query);
+    }
+
+    private long queryForLong(String query) throws SQLException {
+        try (ResultSet rs = query(query)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private long getStoredBalance(long id) throws SQLException {
+        ResultSet rs = query("select balance from accounts where id = " + id);
+        rs.next();
+        long balance = rs.getLong("balance");
+        rs.close();
+        return balance;
+    }
+
     public List<Account> createAndReturnAccounts() throws IOException, SQLException {
         List<Account> accounts = new ArrayList<>();
 
         Account acc1 = new Account();
         acc1.setId(1110111);
-        acc1.setBalance(10.10);
+        acc1.setBalance(Money.parse("10.10"));
         acc1.setCurrency("GBP");
         dbOps.createAccountEntry(acc1);
 
         Account acc2 = new Account();
         acc2.setId(2220222);
-        acc2.setBalance(20.20);
+        acc2.setBalance(Money.parse("20.20"));
         acc2.setCurrency("GBP");
         dbOps.createAccountEntry(acc2);
 
         accounts.add(acc1);
         accounts.add(acc2);
+        // the store stamps createdAt on creation, so take it back from the row
+        for (Account account : accounts) {
+            account.setCreatedAt(queryForLong("select createdAt from accounts where id = " + account.getId()));
+        }
 
         return accounts;
     }
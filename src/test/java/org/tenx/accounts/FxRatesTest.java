@@ -0,0 +1,58 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.RoundingMode;
+
+public class FxRatesTest {
+
+    @Test
+    public void parses_rates_and_derives_inverses() throws IOException {
+        FxRates rates = FxRates.parse(new StringReader("# rates\nGBP,USD,1.25\n\ngbp,jpy,188.45\n"));
+
+        Assertions.assertEquals(4, rates.size());
+        Assertions.assertEquals("1.25", rates.find("GBP", "USD").toString());
+        Assertions.assertEquals("0.8", rates.find("usd", "gbp").toString());
+        Assertions.assertSame(FxRates.Rate.IDENTITY, rates.find("GBP", "gbp"));
+        Assertions.assertSame(FxRates.Rate.IDENTITY, rates.find(null, null));
+        Assertions.assertNull(rates.find(null, "USD"));
+        Assertions.assertNull(rates.find("USD", "JPY"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FxRates.parse(new StringReader("GBP,USD")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FxRates.parse(new StringReader("GBP,USD,0")));
+    }
+
+    @Test
+    public void converts_in_fixed_point_rounding_half_to_even() throws IOException {
+        FxRates rates = FxRates.parse(new StringReader("GBP,USD,1.25\nGBP,JPY,188.45"));
+
+        Assertions.assertEquals(1250, rates.find("GBP", "USD").convert(Money.parse("10.00"), 2));
+        // 0.10 * 1.25 = 0.125 and 0.30 * 1.25 = 0.375, each half way between two cents
+        Assertions.assertEquals(12, rates.find("GBP", "USD").convert(Money.parse("0.10"), 2));
+        Assertions.assertEquals(38, rates.find("GBP", "USD").convert(Money.parse("0.30"), 2));
+        Assertions.assertEquals(-12, rates.find("GBP", "USD").convert(Money.parse("-0.10"), 2));
+        Assertions.assertEquals(1884, rates.find("GBP", "JPY").convert(Money.parse("10.00"), 0));
+        Assertions.assertEquals(531, rates.find("JPY", "GBP").convert(Money.parse("1000"), 2));
+    }
+
+    @Test
+    public void falls_back_to_big_decimal_when_the_product_overflows() throws IOException {
+        FxRates rates = FxRates.parse(new StringReader("GBP,USD,1.234567890123"));
+        Money large = Money.ofMinorUnits(Long.MAX_VALUE / 100, 2);
+
+        long expected = large.toBigDecimal().multiply(rates.find("GBP", "USD").toBigDecimal())
+                .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+        Assertions.assertEquals(expected, rates.find("GBP", "USD").convert(large, 0));
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> rates.find("GBP", "USD").convert(Money.ofMinorUnits(Long.MAX_VALUE, 0), 2));
+    }
+
+    @Test
+    public void identity_rate_does_not_round() {
+        Assertions.assertEquals(1020, FxRates.Rate.IDENTITY.convert(Money.parse("10.2"), 2));
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> FxRates.Rate.IDENTITY.convert(Money.parse("10.205"), 2));
+    }
+}
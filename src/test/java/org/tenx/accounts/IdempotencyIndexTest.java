@@ -0,0 +1,70 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyIndexTest {
+
+    private static IdempotencyIndex newIndex(int maxKeys, long ttlMillis) {
+        IdempotencySettings settings = new IdempotencySettings();
+        settings.setMaxKeys(maxKeys);
+        settings.setTtlMillis(ttlMillis);
+        return new IdempotencyIndex(settings);
+    }
+
+    @Test
+    public void hands_a_repeated_key_the_original_result() {
+        IdempotencyIndex index = newIndex(10, 60000);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        assertNull(index.claim("a", "t", first));
+
+        CompletableFuture<String> original = index.claim("a", "t", new CompletableFuture<>());
+        assertSame(first, original);
+        first.complete("done");
+        assertEquals("done", original.join());
+        assertEquals(1, index.getReplays());
+
+        // a released claim lets the next attempt run
+        index.release("a", first);
+        assertNull(index.claim("a", "t", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void refuses_a_key_reused_for_a_different_transfer() {
+        IdempotencyIndex index = newIndex(10, 60000);
+        assertNull(index.claim("a", "1:2:20:GBP", CompletableFuture.completedFuture("done")));
+
+        CompletableFuture<String> reused = index.claim("a", "1:2:25:GBP", new CompletableFuture<>());
+        CompletionException failure = assertThrows(CompletionException.class, reused::join);
+        assertTrue(failure.getCause() instanceof IdempotencyKeyReusedException);
+        assertEquals(0, index.getReplays());
+        assertEquals("done", index.claim("a", "1:2:20:GBP", new CompletableFuture<>()).join());
+    }
+
+    @Test
+    public void evicts_the_oldest_keys_when_full() {
+        IdempotencyIndex index = newIndex(2, 60000);
+        index.claim("a", "t", CompletableFuture.completedFuture("1"));
+        index.claim("b", "t", CompletableFuture.completedFuture("2"));
+        index.claim("c", "t", CompletableFuture.completedFuture("3"));
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.getEvictions());
+        assertNull(index.claim("a", "t", new CompletableFuture<>()));
+        assertEquals("3", index.claim("c", "t", new CompletableFuture<>()).join());
+    }
+
+    @Test
+    public void expires_keys_after_the_ttl() throws InterruptedException {
+        IdempotencyIndex index = newIndex(10, 20);
+        index.claim("a", "t", CompletableFuture.completedFuture("1"));
+        Thread.sleep(40);
+
+        assertNull(index.claim("a", "t", new CompletableFuture<>()));
+        assertEquals(1, index.size());
+    }
+}
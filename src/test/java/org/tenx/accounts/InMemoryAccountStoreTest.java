@@ -0,0 +1,293 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class InMemoryAccountStoreTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InMemorySettings settings = new InMemorySettings();
+    private InMemoryAccountStore store;
+
+    @TempDir
+    Path journalDirectory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        settings.setJournalPath(journalDirectory.resolve("10xBank.journal").toString());
+        settings.setLockStripes(4);
+        store = new InMemoryAccountStore(settings);
+    }
+
+    @AfterEach
+    public void closeJournal() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void counts_a_replayed_transfer_once() throws IOException, SQLException {
+        BankProperties properties = new BankProperties();
+        properties.setEngine("memory");
+        properties.getMemory().setJournalPath(journalDirectory.resolve("replays.journal").toString());
+        MeterRegistry registry = new SimpleMeterRegistry();
+        try (AccountStore decorated = AccountStore.create(properties, new BankMetrics(registry))) {
+            decorated.createAccountEntry(account(1, 10));
+            decorated.createAccountEntry(account(2, 0));
+            for (int i = 0; i < 3; i++) {
+                Transfer retry = transfer(1, 2, 1);
+                retry.setIdempotencyKey("order-17");
+                Assertions.assertEquals(TransferMessages.successful(1), decorated.handleTransaction(retry));
+            }
+        }
+        Assertions.assertEquals(1, registry.get("tenx.transfers").tag("outcome", "success").counter().count());
+        Assertions.assertEquals(2, registry.get("tenx.idempotency.replays").functionCounter().count());
+    }
+
+    @Test
+    public void can_create_retrieve_and_transfer() throws IOException {
+        createAccounts();
+
+        Assertions.assertEquals("Account 1110111 already exists.", store.createAccountEntry(account(1110111, 1)));
+        Assertions.assertEquals(TransferMessages.successful(1), store.handleTransaction(transfer(1110111, 2220222, 1.2)));
+        Assertions.assertEquals(TransferMessages.insufficientBalance(),
+                store.handleTransaction(transfer(1110111, 2220222, 1000)));
+        Assertions.assertEquals(TransferMessages.accountError(1110111, 1110111, true, true, false),
+                store.handleTransaction(transfer(1110111, 1110111, 1)));
+        Assertions.assertEquals(TransferMessages.accountError(11101112, 1110111, false, true, true),
+                store.handleTransaction(transfer(11101112, 1110111, 1)));
+
+        Assertions.assertEquals(Money.parse("8.9"), readAccount(1110111).getBalance());
+        Assertions.assertEquals(Money.parse("21.4"), readAccount(2220222).getBalance());
+        Assertions.assertEquals("Error the account with ID 3 does not exist.", store.getAccountDetails(3));
+    }
+
+    @Test
+    public void grows_past_the_initial_capacity() throws IOException {
+        store.close();
+        settings.setInitialCapacity(16);
+        store = new InMemoryAccountStore(settings);
+
+        for (long id = 1; id <= 1000; id++) {
+            store.createAccountEntry(account(id, 1));
+        }
+        for (long id = 1; id <= 1000; id++) {
+            Assertions.assertEquals(id, readAccount(id).getId());
+        }
+        Assertions.assertEquals("Error the account with ID 1001 does not exist.", store.getAccountDetails(1001));
+    }
+
+    @Test
+    public void recovers_balances_from_journal() throws IOException {
+        createAccounts();
+        store.handleTransaction(transfer(1110111, 2220222, 1.2));
+        store.handleTransaction(transfer(2220222, 1110111, 0.1));
+        String before = store.getAccountDetails();
+        store.close();
+
+        store = new InMemoryAccountStore(settings);
+
+        Assertions.assertEquals(before, store.getAccountDetails());
+        Assertions.assertEquals(TransferMessages.successful(3), store.handleTransaction(transfer(1110111, 2220222, 1)));
+    }
+
+    @Test
+    public void ignores_torn_journal_tail() throws IOException {
+        createAccounts();
+        store.handleTransaction(transfer(1110111, 2220222, 1.2));
+        store.close();
+
+        try (RandomAccessFile journal = new RandomAccessFile(settings.getJournalPath(), "rw")) {
+            journal.setLength(journal.length() - 3);
+        }
+        store = new InMemoryAccountStore(settings);
+
+        Assertions.assertEquals(Money.parse("10.1"), readAccount(1110111).getBalance());
+        Assertions.assertEquals(TransferMessages.successful(1), store.handleTransaction(transfer(1110111, 2220222, 1)));
+    }
+
+    @Test
+    public void concurrent_opposite_transfers_keep_totals() throws Exception {
+        createAccounts();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            Transfer transfer = i % 2 == 0 ? transfer(1110111, 2220222, 0.01) : transfer(2220222, 1110111, 0.01);
+            results.add(executor.submit(() -> store.handleTransaction(transfer)));
+        }
+        for (Future<String> result : results) {
+            Assertions.assertTrue(result.get().startsWith("Transaction successful."));
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(Money.parse("10.1"), readAccount(1110111).getBalance());
+        Assertions.assertEquals(Money.parse("20.2"), readAccount(2220222).getBalance());
+    }
+
+    @Test
+    public void sharded_transfers_keep_totals_and_survive_restart() throws Exception {
+        store.close();
+        settings.setTransferShards(4);
+        store = new InMemoryAccountStore(settings);
+        for (long id = 1; id <= 8; id++) {
+            store.createAccountEntry(account(id, 100));
+        }
+
+        // account 1 is hot, every other transfer is between two of the remaining accounts
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            long source = i % 2 == 0 ? 1 : 2 + i % 7;
+            long destination = i % 2 == 0 ? 2 + (i / 2) % 7 : 2 + (i + 3) % 7;
+            Transfer transfer = transfer(source, destination == source ? 1 : destination, 0.25);
+            results.add(executor.submit(() -> store.handleTransaction(transfer)));
+        }
+        for (Future<String> result : results) {
+            Assertions.assertTrue(result.get().startsWith("Transaction successful."));
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(Money.parse("0.0"), readAccount(1).getBalance());
+        BigDecimal total = BigDecimal.ZERO;
+        for (long id = 1; id <= 8; id++) {
+            total = total.add(readAccount(id).getBalance().toBigDecimal());
+        }
+        Assertions.assertEquals(0, total.compareTo(BigDecimal.valueOf(800)));
+        Assertions.assertEquals(TransferMessages.insufficientBalance(), store.handleTransaction(transfer(1, 2, 1)));
+
+        List<String> applied = store.handleTransactionBatch(List.of(
+                transfer(2, 1, 10), transfer(1, 3, 10)), true);
+        Assertions.assertEquals(List.of(TransferMessages.successful(801), TransferMessages.successful(802)), applied);
+
+        String before = store.getAccountDetails();
+        store.close();
+        store = new InMemoryAccountStore(settings);
+        Assertions.assertEquals(before, store.getAccountDetails());
+        Assertions.assertEquals(TransferMessages.successful(803), store.handleTransaction(transfer(3, 1, 1)));
+    }
+
+    @Test
+    public void atomic_batch_applies_all_or_nothing_and_survives_restart() throws IOException {
+        createAccounts();
+
+        List<String> rolledBack = store.handleTransactionBatch(List.of(
+                transfer(1110111, 2220222, 10), transfer(1110111, 2220222, 0.2)), true);
+        Assertions.assertEquals(TransferMessages.insufficientBalance(), rolledBack.get(1));
+        Assertions.assertEquals(Money.parse("10.1"), readAccount(1110111).getBalance());
+
+        List<String> applied = store.handleTransactionBatch(List.of(
+                transfer(1110111, 2220222, 10), transfer(2220222, 1110111, 30.2)), true);
+        Assertions.assertEquals(List.of(TransferMessages.successful(1), TransferMessages.successful(2)), applied);
+
+        store.close();
+        store = new InMemoryAccountStore(settings);
+        Assertions.assertEquals(Money.parse("30.3"), readAccount(1110111).getBalance());
+        Assertions.assertEquals(Money.parse("0.0"), readAccount(2220222).getBalance());
+    }
+
+    @Test
+    public void converts_cross_currency_transfers_and_replays_the_settled_amounts() throws IOException {
+        store.close();
+        FxRateTable exchangeRates = FxRateTable.of(FxRates.parse(new StringReader("GBP,JPY,188.45")));
+        store = new InMemoryAccountStore(settings, exchangeRates);
+        createAccounts();
+        Account yen = account(3330333, 100);
+        yen.setCurrency("JPY");
+        store.createAccountEntry(yen);
+        Account dollars = account(4440444, 1);
+        dollars.setCurrency("USD");
+        store.createAccountEntry(dollars);
+
+        Assertions.assertEquals(TransferMessages.successful(1), store.handleTransaction(transfer(1110111, 3330333, 1.1)));
+        Assertions.assertEquals(TransferMessages.noExchangeRate("GBP", "USD"),
+                store.handleTransaction(transfer(1110111, 4440444, 1)));
+        Transfer noCurrency = transfer(1110111, 4440444, 1);
+        noCurrency.setCurrency(null);
+        Assertions.assertEquals(TransferMessages.noExchangeRate("GBP", "USD"), store.handleTransaction(noCurrency));
+        Assertions.assertEquals(Money.parse("9.0"), readAccount(1110111).getBalance());
+        Assertions.assertEquals(Money.parse("307"), readAccount(3330333).getBalance());
+
+        // a restart with different rates keeps the amounts each transfer settled at
+        store.close();
+        store = new InMemoryAccountStore(settings, FxRateTable.of(FxRates.EMPTY));
+        Assertions.assertEquals(Money.parse("307"), readAccount(3330333).getBalance());
+        Assertions.assertEquals(TransferMessages.noExchangeRate("GBP", "JPY"),
+                store.handleTransaction(transfer(1110111, 3330333, 1)));
+    }
+
+    @Test
+    public void imports_accounts_all_or_nothing_and_survives_restart() throws IOException {
+        createAccounts();
+
+        Assertions.assertEquals(TransferMessages.importDuplicate(2220222),
+                store.importAccounts(csv("3,1.00,GBP\n2220222,4.00,GBP\n")));
+        Assertions.assertEquals(TransferMessages.importDuplicate(3), store.importAccounts(csv("3,1.00,GBP\n3,1,GBP\n")));
+        Assertions.assertEquals("Error the account with ID 3 does not exist.", store.getAccountDetails(3));
+
+        Assertions.assertEquals(TransferMessages.imported(2),
+                store.importAccounts(csv("3,1.00,GBP,2021-08-01 10:00:00\n4,300,JPY\n")));
+        store.close();
+        store = new InMemoryAccountStore(settings);
+
+        Assertions.assertEquals(Money.parse("300"), readAccount(4).getBalance());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.exportAccounts(AccountFormat.BINARY.openWriter(out));
+        AccountFormat.AccountReader snapshot = AccountFormat.BINARY.openReader(
+                new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertEquals(3, snapshot.next().getId());
+        Account imported = snapshot.next();
+        Assertions.assertEquals(4, imported.getId());
+        Assertions.assertEquals(Money.parse("300"), imported.getBalance());
+        Assertions.assertEquals(1110111, snapshot.next().getId());
+    }
+
+    private static AccountFormat.AccountReader csv(String lines) throws IOException {
+        return AccountFormat.CSV.openReader(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void createAccounts() throws IOException {
+        store.createAccountEntry(account(1110111, 10.10));
+        store.createAccountEntry(account(2220222, 20.20));
+    }
+
+    private Account readAccount(long id) throws IOException {
+        return objectMapper.readValue(store.getAccountDetails(id), Account.class);
+    }
+
+    private Account account(long id, double balance) {
+        Account account = new Account();
+        account.setId(id);
+        account.setBalance(Money.of(BigDecimal.valueOf(balance)));
+        account.setCurrency("GBP");
+        return account;
+    }
+
+    private Transfer transfer(long sourceAccountId, long destinationAccountId, double amount) {
+        Transfer transfer = new Transfer();
+        transfer.setSourceAccountId(sourceAccountId);
+        transfer.setDestinationAccountId(destinationAccountId);
+        transfer.setAmount(Money.of(BigDecimal.valueOf(amount)));
+        transfer.setCurrency("GBP");
+        return transfer;
+    }
+}
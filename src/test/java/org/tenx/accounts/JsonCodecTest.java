@@ -0,0 +1,87 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class JsonCodecTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void reads_accounts_like_data_binding() throws Exception {
+        Account account = AccountJsonCodec.readAccount(json(
+                "{\"id\": \"2220222\", \"balance\": 100000, \"currency\": \"GBP\", \"createdAt\": \"2021-08-01 10:00:00\"}"));
+        Assertions.assertEquals(2220222, account.getId());
+        Assertions.assertEquals(Money.parse("100000"), account.getBalance());
+        Assertions.assertEquals("GBP", account.getCurrency());
+        Assertions.assertEquals(objectMapper.writeValueAsString(account), AccountJsonCodec.toJson(account));
+
+        Assertions.assertThrows(JsonParseException.class,
+                () -> AccountJsonCodec.readAccount(json("{\"id\": 1, \"owner\": \"someone\"}")));
+        Assertions.assertThrows(JsonParseException.class,
+                () -> AccountJsonCodec.readAccount(json("{\"id\": 1, \"balance\": \"lots\"}")));
+        Assertions.assertThrows(JsonParseException.class, () -> AccountJsonCodec.readAccount(json("")));
+    }
+
+    @Test
+    public void reads_transfers_ignoring_the_id() throws Exception {
+        Transfer transfer = TransferJsonCodec.readTransfer(json(
+                "{\"id\": 7, \"sourceAccountId\": 1, \"destinationAccountId\": \"2\", \"amount\": 0.20, " +
+                        "\"currency\": \"GBP\"}"));
+        Assertions.assertEquals(0, transfer.getId());
+        Assertions.assertEquals(1, transfer.getSourceAccountId());
+        Assertions.assertEquals(2, transfer.getDestinationAccountId());
+        Assertions.assertEquals(20, transfer.getAmount().toMinorUnits(2));
+        Assertions.assertNotNull(transfer.getCreatedAt());
+    }
+
+    @Test
+    public void reads_a_null_amount_as_zero_like_a_missing_one() throws Exception {
+        String body = "{\"sourceAccountId\": 1, \"destinationAccountId\": 2, \"amount\": null}";
+        Assertions.assertEquals(Money.ZERO, TransferJsonCodec.readTransfer(json(body)).getAmount());
+        Assertions.assertEquals(Money.ZERO, objectMapper.readValue(body, Transfer.class).getAmount());
+        Assertions.assertEquals(Money.ZERO,
+                AccountJsonCodec.readAccount(json("{\"id\": 1, \"balance\": null}")).getBalance());
+    }
+
+    @Test
+    public void reads_transfer_arrays_and_newline_delimited_transfers() throws Exception {
+        List<Transfer> array = TransferJsonCodec.readTransfers(json(
+                "[{\"sourceAccountId\": 1, \"amount\": 1}, {\"sourceAccountId\": 2, \"amount\": 2}]"));
+        List<Transfer> delimited = TransferJsonCodec.readTransfers(json(
+                "{\"sourceAccountId\": 1, \"amount\": 1}\n{\"sourceAccountId\": 2, \"amount\": 2}\n"));
+        for (List<Transfer> transfers : List.of(array, delimited)) {
+            Assertions.assertEquals(2, transfers.size());
+            Assertions.assertEquals(2, transfers.get(1).getSourceAccountId());
+            Assertions.assertEquals(Money.parse("2"), transfers.get(1).getAmount());
+        }
+
+        Assertions.assertEquals("[\"ok\",\"say \\\"no\\\"\"]", new String(
+                TransferJsonCodec.writeResults(List.of("ok", "say \"no\"")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void carries_timestamps_as_epoch_millis_and_formats_them_at_the_edge() throws Exception {
+        long createdAt = Timestamps.parse("2021-08-01 10:00:00");
+        Assertions.assertEquals("2021-08-01 10:00:00", Timestamps.format(createdAt + 999));
+
+        Transfer fromText = TransferJsonCodec.readTransfer(json("{\"createdAt\": \"2021-08-01 10:00:00\"}"));
+        Transfer fromMillis = TransferJsonCodec.readTransfer(json("{\"createdAt\": " + createdAt + "}"));
+        Assertions.assertEquals(createdAt, fromText.getCreatedAt());
+        Assertions.assertEquals(createdAt, fromMillis.getCreatedAt());
+
+        Account account = objectMapper.readValue("{\"id\": 1, \"createdAt\": \"2021-08-01 10:00:00\"}", Account.class);
+        Assertions.assertEquals(createdAt, account.getCreatedAt());
+        Assertions.assertTrue(AccountJsonCodec.toJson(account).endsWith("\"createdAt\":\"2021-08-01 10:00:00\"}"));
+    }
+}
@@ -0,0 +1,36 @@
+package org.tenx.accounts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MoneyTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void converts_between_exponents_exactly() {
+        Money amount = Money.parse("10.20");
+        Assertions.assertEquals(1020, amount.toMinorUnits(Money.exponentOf("GBP")));
+        Assertions.assertEquals(10200, amount.toMinorUnits(Money.exponentOf("KWD")));
+        Assertions.assertThrows(ArithmeticException.class, () -> amount.toMinorUnits(Money.exponentOf("JPY")));
+        Assertions.assertEquals(10, Money.parse("10.00").toMinorUnits(0));
+    }
+
+    @Test
+    public void formats_like_a_double() {
+        Assertions.assertEquals("100000.0", Money.parse("100000").toString());
+        Assertions.assertEquals("10.2", Money.ofMinorUnits(1020, 2).toString());
+        Assertions.assertEquals("0.05", Money.ofMinorUnits(5, 2).toString());
+        Assertions.assertEquals("-1.5", Money.ofMinorUnits(-150, 2).toString());
+    }
+
+    @Test
+    public void round_trips_through_json() throws Exception {
+        Transfer transfer = objectMapper.readValue("{\"amount\": 0.20, \"currency\": \"GBP\"}", Transfer.class);
+        Assertions.assertEquals(20, transfer.getAmount().toMinorUnits(2));
+
+        Account account = new Account();
+        account.setBalance(Money.ofMinorUnits(1010, 2));
+        Assertions.assertTrue(objectMapper.writeValueAsString(account).contains("\"balance\":10.1,"));
+    }
+}
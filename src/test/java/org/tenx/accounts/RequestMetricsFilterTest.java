@@ -0,0 +1,29 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class RequestMetricsFilterTest {
+
+    @Test
+    public void counts_an_async_request_until_it_completes() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RequestMetricsFilter filter = new RequestMetricsFilter(registry);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/getaccountstatus");
+        request.setAsyncSupported(true);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        Assertions.assertEquals(1, registry.get("tenx.http.in_flight").gauge().value());
+
+        request.getAsyncContext().complete();
+        Assertions.assertEquals(0, registry.get("tenx.http.in_flight").gauge().value());
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/getaccountstatus"), new MockHttpServletResponse(),
+                (req, res) -> { });
+        Assertions.assertEquals(0, registry.get("tenx.http.in_flight").gauge().value());
+    }
+}
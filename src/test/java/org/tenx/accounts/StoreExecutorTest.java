@@ -0,0 +1,71 @@
+package org.tenx.accounts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StoreExecutorTest {
+
+    private static ExecutorSettings settings(int threads, int queueCapacity) {
+        ExecutorSettings settings = new ExecutorSettings();
+        settings.setThreads(threads);
+        settings.setQueueCapacity(queueCapacity);
+        return settings;
+    }
+
+    @Test
+    public void refuses_calls_once_the_queue_is_full() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StoreExecutor executor = new StoreExecutor(settings(1, 1), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> running = executor.submit(() -> {
+                release.await();
+                return "first";
+            });
+            CompletableFuture<String> queued = executor.submit(() -> "second");
+            assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> "third"));
+            assertEquals(1, registry.get("tenx.executor.rejected").counter().count());
+
+            release.countDown();
+            assertEquals("first", running.get(5, TimeUnit.SECONDS));
+            assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    public void completes_exceptionally_with_what_the_call_threw() throws Exception {
+        StoreExecutor executor = new StoreExecutor(settings(1, 1), new SimpleMeterRegistry());
+        try {
+            CompletableFuture<String> result = executor.submit(() -> {
+                throw new IOException("disk full");
+            });
+            ExecutionException thrown = assertThrows(ExecutionException.class,
+                    () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(thrown.getCause() instanceof IOException);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void runs_calls_inline_when_disabled() throws Exception {
+        ExecutorSettings settings = settings(1, 1);
+        settings.setEnabled(false);
+        StoreExecutor executor = new StoreExecutor(settings, new SimpleMeterRegistry());
+        Thread caller = Thread.currentThread();
+        assertTrue(executor.submit(() -> Thread.currentThread() == caller).getNow(false));
+        executor.close();
+    }
+}
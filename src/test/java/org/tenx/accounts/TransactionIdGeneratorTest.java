@@ -0,0 +1,69 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TransactionIdGeneratorTest {
+
+    private final String dbUrl = "jdbc:sqlite:10xBankTestDB";
+    private final DatabaseOperations dbOps = new DatabaseOperations(dbUrl);
+
+    @AfterEach
+    public void closeConnections() throws SQLException {
+        dbOps.close();
+    }
+
+    @Test
+    public void sequence_ids_are_unique_across_blocks_and_threads() throws Exception {
+        dbOps.clearTables("transactions");
+        TransactionIdGenerator generator = new SequenceBlockIdGenerator(dbOps.connectionPool, 10);
+
+        Set<Long> ids = generateConcurrently(generator, 8, 500);
+
+        Assertions.assertEquals(4000, ids.size());
+        Assertions.assertTrue(ids.contains(1L));
+        Assertions.assertTrue(ids.contains(4000L));
+    }
+
+    @Test
+    public void snowflake_ids_are_unique_and_carry_the_node_id() throws Exception {
+        TransactionIdGenerator generator = new SnowflakeIdGenerator(42);
+
+        Set<Long> ids = generateConcurrently(generator, 8, 10000);
+
+        Assertions.assertEquals(80000, ids.size());
+        for (long id : ids) {
+            Assertions.assertEquals(42, (id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID);
+        }
+    }
+
+    private Set<Long> generateConcurrently(TransactionIdGenerator generator, int threads, int idsPerThread)
+            throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < idsPerThread; i++) {
+                    ids.add(generator.nextId());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return ids;
+    }
+}
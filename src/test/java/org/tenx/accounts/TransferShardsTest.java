@@ -0,0 +1,33 @@
+package org.tenx.accounts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TransferShardsTest {
+
+    @Test
+    public void runs_queued_tasks_before_closing() throws InterruptedException {
+        TransferShards shards = new TransferShards(2, 5000);
+        CountDownLatch ran = new CountDownLatch(2);
+        shards.execute(1, ran::countDown);
+        shards.execute(2, ran::countDown);
+        shards.close();
+        Assertions.assertEquals(0, ran.getCount());
+    }
+
+    @Test
+    public void gives_up_on_a_paused_shard_when_closing() throws InterruptedException {
+        TransferShards shards = new TransferShards(2, 50);
+        TransferShards.Pause pause = shards.pause(new long[]{1});
+        try {
+            long start = System.nanoTime();
+            shards.close();
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        } finally {
+            pause.close();
+        }
+    }
+}